@@ -0,0 +1,89 @@
+package com.example.rocketmqdemo.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.example.rocketmqdemo.codec.CompressorRegistry;
+import com.example.rocketmqdemo.codec.DeflateCompressor;
+import com.example.rocketmqdemo.codec.JsonMessageCodec;
+import com.example.rocketmqdemo.codec.Lz4Compressor;
+import com.example.rocketmqdemo.codec.MessageCodecRegistry;
+import com.example.rocketmqdemo.codec.MessageDTOBinaryCodec;
+import com.example.rocketmqdemo.config.HotPathLogSampler;
+import com.example.rocketmqdemo.config.MQProperties;
+import com.example.rocketmqdemo.model.MessageDTO;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * 基准测试共用的组件装配，不启动Spring容器，按字段注入依赖
+ */
+final class BenchmarkFixtures {
+
+    static final String NORMAL_TOPIC = "TOPIC_PRODUCT_TEST";
+
+    static final String ORDERLY_TOPIC = "TOPIC_ORDER_TEST";
+
+    static final String BINARY_TOPIC = "TOPIC_BINARY_TEST";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * 关闭INFO日志，发送和消费路径上的日志输出不计入结果
+     */
+    static void quietLogging() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    static MQProperties mqProperties() {
+        MQProperties.Producer producer = new MQProperties.Producer();
+        producer.setGroup("PID_BENCHMARK");
+        producer.setTopics(NORMAL_TOPIC + ";" + ORDERLY_TOPIC + ";" + BINARY_TOPIC);
+        producer.setTopicClusters("product;product;product");
+        producer.setMsgTypes("normal;orderly;normal");
+        producer.setCodecs("json;json;binary");
+        producer.setCompressions("none;none;none");
+        MQProperties properties = new MQProperties();
+        properties.setProducer(producer);
+        return properties;
+    }
+
+    static MessageCodecRegistry codecRegistry(MQProperties properties) {
+        JsonMessageCodec jsonCodec = new JsonMessageCodec();
+        MessageCodecRegistry registry = new MessageCodecRegistry();
+        ReflectionTestUtils.setField(registry, "mqProperties", properties);
+        ReflectionTestUtils.setField(registry, "codecs", Arrays.asList(jsonCodec, new MessageDTOBinaryCodec()));
+        ReflectionTestUtils.setField(registry, "jsonMessageCodec", jsonCodec);
+        registry.init();
+        return registry;
+    }
+
+    static HotPathLogSampler logSampler(MQProperties properties) {
+        HotPathLogSampler sampler = new HotPathLogSampler();
+        ReflectionTestUtils.setField(sampler, "mqProperties", properties);
+        sampler.init();
+        return sampler;
+    }
+
+    static CompressorRegistry compressorRegistry(MQProperties properties) {
+        CompressorRegistry registry = new CompressorRegistry();
+        ReflectionTestUtils.setField(registry, "mqProperties", properties);
+        ReflectionTestUtils.setField(registry, "compressors", Arrays.asList(new Lz4Compressor(), new DeflateCompressor()));
+        registry.init();
+        return registry;
+    }
+
+    static MessageDTO sampleMessage() {
+        return MessageDTO.builder()
+                .id(UUID.randomUUID().toString())
+                .type("product")
+                .content("benchmark message content")
+                .businessId(UUID.randomUUID().toString())
+                .createTime(LocalDateTime.now())
+                .build();
+    }
+}
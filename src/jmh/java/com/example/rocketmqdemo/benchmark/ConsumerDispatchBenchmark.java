@@ -0,0 +1,104 @@
+package com.example.rocketmqdemo.benchmark;
+
+import com.example.rocketmqdemo.codec.JsonMessageCodec;
+import com.example.rocketmqdemo.codec.MessageCodec;
+import com.example.rocketmqdemo.codec.MessageDTOBinaryCodec;
+import com.example.rocketmqdemo.config.MQProperties;
+import com.example.rocketmqdemo.consumer.DecompressingMessageListener;
+import com.example.rocketmqdemo.consumer.DemoMessageConsumer;
+import com.example.rocketmqdemo.consumer.MessageDTOHandler;
+import com.example.rocketmqdemo.consumer.TypedMessageDispatcher;
+import com.example.rocketmqdemo.model.MessageDTO;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消费者按批次分发消息的开销：按contentType解码、按处理器声明的类型解码分发以及解压监听器的透传
+ * 结果为每批消息的耗时，INFO日志关闭，不包含日志输出
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsumerDispatchBenchmark {
+    
+    @Param({"1", "16", "32"})
+    private int batchSize;
+    
+    @Param({JsonMessageCodec.NAME, MessageDTOBinaryCodec.NAME})
+    private String codec;
+    
+    private DemoMessageConsumer consumer;
+    
+    private DecompressingMessageListener decompressingListener;
+    
+    private TypedMessageDispatcher<MessageDTO> typedDispatcher;
+    
+    private List<MessageExt> batch;
+    
+    private ConsumeConcurrentlyContext context;
+    
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.quietLogging();
+        MQProperties properties = BenchmarkFixtures.mqProperties();
+        
+        consumer = new DemoMessageConsumer();
+        ReflectionTestUtils.setField(consumer, "codecRegistry", BenchmarkFixtures.codecRegistry(properties));
+        ReflectionTestUtils.setField(consumer, "logSampler", BenchmarkFixtures.logSampler(properties));
+        MessageDTOHandler handler = new MessageDTOHandler();
+        ReflectionTestUtils.setField(handler, "logSampler", BenchmarkFixtures.logSampler(properties));
+        typedDispatcher = new TypedMessageDispatcher<>(handler, MessageDTO.class, BenchmarkFixtures.codecRegistry(properties));
+        decompressingListener = new DecompressingMessageListener(consumer, BenchmarkFixtures.compressorRegistry(properties));
+        
+        MessageCodec messageCodec = JsonMessageCodec.NAME.equals(codec) ? new JsonMessageCodec() : new MessageDTOBinaryCodec();
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            MessageDTO message = BenchmarkFixtures.sampleMessage();
+            MessageExt msg = new MessageExt();
+            msg.setTopic(BenchmarkFixtures.NORMAL_TOPIC);
+            msg.setTags("tagA");
+            msg.setKeys(message.getId());
+            msg.setMsgId("msg-" + i);
+            msg.setBody(messageCodec.encode(message));
+            msg.putUserProperty(MessageCodec.CONTENT_TYPE_PROPERTY, messageCodec.contentType());
+            batch.add(msg);
+        }
+        context = new ConsumeConcurrentlyContext(new MessageQueue(BenchmarkFixtures.NORMAL_TOPIC, "broker-a", 0));
+    }
+    
+    @Benchmark
+    public ConsumeConcurrentlyStatus consumeMessage() {
+        return consumer.consumeMessage(batch, context);
+    }
+    
+    @Benchmark
+    public ConsumeConcurrentlyStatus consumeMessageTyped() {
+        return typedDispatcher.consumeMessage(batch, context);
+    }
+    
+    @Benchmark
+    public ConsumeConcurrentlyStatus consumeMessageWithDecompression() {
+        return decompressingListener.consumeMessage(batch, context);
+    }
+}
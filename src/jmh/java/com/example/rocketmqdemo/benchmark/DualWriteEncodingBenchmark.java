@@ -0,0 +1,98 @@
+package com.example.rocketmqdemo.benchmark;
+
+import com.example.rocketmqdemo.codec.JsonMessageCodec;
+import com.example.rocketmqdemo.codec.MessageDTOBinaryCodec;
+import com.example.rocketmqdemo.model.MessageDTO;
+import com.example.rocketmqdemo.producer.EncodedMessage;
+import org.apache.rocketmq.spring.support.RocketMQUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 双写时消息编码的分配对比：每个集群各自序列化 vs 编码一次后共享消息体
+ * 使用 -prof gc 运行，gc.alloc.rate.norm 即每次发送分配的字节数
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DualWriteEncodingBenchmark {
+    
+    private static final String DESTINATION = "TOPIC_PRODUCT_TEST:tagA";
+    
+    private static final int CLUSTERS = 2;
+    
+    private MappingJackson2MessageConverter converter;
+    
+    private JsonMessageCodec jsonCodec;
+    
+    private MessageDTOBinaryCodec binaryCodec;
+    
+    private MessageDTO message;
+    
+    @Setup
+    public void setup() {
+        converter = new MappingJackson2MessageConverter();
+        jsonCodec = new JsonMessageCodec();
+        binaryCodec = new MessageDTOBinaryCodec();
+        message = MessageDTO.builder()
+                .id(UUID.randomUUID().toString())
+                .type("product")
+                .content("benchmark message content")
+                .businessId(UUID.randomUUID().toString())
+                .createTime(LocalDateTime.now())
+                .build();
+    }
+    
+    /**
+     * 原有方式：每个集群构建一次Spring消息，由模板各自转换为RocketMQ消息
+     */
+    @Benchmark
+    public void perTemplateEncoding(Blackhole blackhole) {
+        for (int i = 0; i < CLUSTERS; i++) {
+            Message<?> springMessage = MessageBuilder.withPayload(message).build();
+            Message<?> converted = converter.toMessage(springMessage.getPayload(), springMessage.getHeaders());
+            blackhole.consume(RocketMQUtil.convertToRocketMessage(converter, "UTF-8", DESTINATION, converted));
+        }
+    }
+    
+    /**
+     * 新方式：编码一次，每个集群只创建共享消息体的RocketMQ消息
+     */
+    @Benchmark
+    public void encodeOnceFanOut(Blackhole blackhole) {
+        EncodedMessage encoded = EncodedMessage.encode(jsonCodec, DESTINATION, message);
+        for (int i = 0; i < CLUSTERS; i++) {
+            blackhole.consume(encoded.toRocketMessage());
+        }
+    }
+    
+    /**
+     * 编码一次并使用MessageDTO二进制编解码器
+     */
+    @Benchmark
+    public void encodeOnceFanOutBinary(Blackhole blackhole) {
+        EncodedMessage encoded = EncodedMessage.encode(binaryCodec, DESTINATION, message);
+        for (int i = 0; i < CLUSTERS; i++) {
+            blackhole.consume(encoded.toRocketMessage());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.rocketmqdemo.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.example.rocketmqdemo.codec.JsonMessageCodec;
+import com.example.rocketmqdemo.codec.MessageDTOBinaryCodec;
+import com.example.rocketmqdemo.model.MessageDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MessageDTO编解码对比：模板使用的MappingJackson2MessageConverter、JSON编解码器、二进制编解码器和fastjson
+ * 模板的转换器把LocalDateTime按对象属性序列化，无法直接反序列化为MessageDTO，解码以JSON编解码器为基准
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+    
+    private MappingJackson2MessageConverter converter;
+    
+    private JsonMessageCodec jsonCodec;
+    
+    private MessageDTOBinaryCodec binaryCodec;
+    
+    private MessageDTO message;
+    
+    private byte[] jsonBody;
+    
+    private byte[] binaryBody;
+    
+    private byte[] fastjsonBody;
+    
+    @Setup
+    public void setup() {
+        converter = new MappingJackson2MessageConverter();
+        jsonCodec = new JsonMessageCodec();
+        binaryCodec = new MessageDTOBinaryCodec();
+        message = BenchmarkFixtures.sampleMessage();
+        jsonBody = jsonCodec.encode(message);
+        binaryBody = binaryCodec.encode(message);
+        fastjsonBody = JSON.toJSONBytes(message);
+    }
+    
+    @Benchmark
+    public Object converterEncode() {
+        return converter.toMessage(message, null).getPayload();
+    }
+    
+    @Benchmark
+    public byte[] jsonEncode() {
+        return jsonCodec.encode(message);
+    }
+    
+    @Benchmark
+    public byte[] binaryEncode() {
+        return binaryCodec.encode(message);
+    }
+    
+    @Benchmark
+    public byte[] fastjsonEncode() {
+        return JSON.toJSONBytes(message);
+    }
+    
+    @Benchmark
+    public MessageDTO jsonDecode() {
+        return jsonCodec.decode(jsonBody, MessageDTO.class);
+    }
+    
+    @Benchmark
+    public MessageDTO binaryDecode() {
+        return binaryCodec.decode(binaryBody, MessageDTO.class);
+    }
+    
+    @Benchmark
+    public MessageDTO fastjsonDecode() {
+        return JSON.parseObject(fastjsonBody, MessageDTO.class);
+    }
+}
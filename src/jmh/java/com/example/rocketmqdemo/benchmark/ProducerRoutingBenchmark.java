@@ -0,0 +1,158 @@
+package com.example.rocketmqdemo.benchmark;
+
+import com.example.rocketmqdemo.config.MQProperties;
+import com.example.rocketmqdemo.model.MessageDTO;
+import com.example.rocketmqdemo.producer.ProducerMetrics;
+import com.example.rocketmqdemo.producer.RocketMQProducer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 生产者发送路径的开销：模板选择、destination构建、编码、双写扇出和结果汇总
+ * 模板内的生产者替换为直接回调成功的桩，不访问Broker，结果只包含客户端本地的处理开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProducerRoutingBenchmark {
+    
+    @Param({"false", "true"})
+    private boolean dualWrite;
+    
+    private RocketMQProducer producer;
+    
+    private MessageDTO message;
+    
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.quietLogging();
+        MQProperties properties = BenchmarkFixtures.mqProperties();
+        
+        ProducerMetrics metrics = new ProducerMetrics();
+        ReflectionTestUtils.setField(metrics, "meterRegistry", new SimpleMeterRegistry());
+        
+        RocketMQTemplate originTemplate = stubTemplate("PID_BENCHMARK_ORIGIN");
+        Map<String, RocketMQTemplate> templates = new HashMap<>();
+        templates.put("originRocketMQTemplate", originTemplate);
+        templates.put("productRocketMQTemplate", stubTemplate("PID_BENCHMARK_PRODUCT"));
+        
+        producer = new RocketMQProducer();
+        ReflectionTestUtils.setField(producer, "mqProperties", properties);
+        ReflectionTestUtils.setField(producer, "originRocketMQTemplate", originTemplate);
+        ReflectionTestUtils.setField(producer, "clusterTemplates", templates);
+        ReflectionTestUtils.setField(producer, "codecRegistry", BenchmarkFixtures.codecRegistry(properties));
+        ReflectionTestUtils.setField(producer, "compressorRegistry", BenchmarkFixtures.compressorRegistry(properties));
+        ReflectionTestUtils.setField(producer, "producerMetrics", metrics);
+        ReflectionTestUtils.setField(producer, "logSampler", BenchmarkFixtures.logSampler(properties));
+        ReflectionTestUtils.setField(producer, "routingTable", ReflectionTestUtils.invokeMethod(producer, "buildRoutingTable",
+                properties.getProducer().getTopicClusters(), properties.getProducer().getRouteRules(),
+                properties.getProducer().getAckPolicies()));
+        ReflectionTestUtils.setField(producer, "dualWriteEnabled", dualWrite);
+        
+        message = BenchmarkFixtures.sampleMessage();
+    }
+    
+    /**
+     * 同步发送接口，JSON编码
+     */
+    @Benchmark
+    public void sendMessage(Blackhole blackhole) {
+        blackhole.consume(producer.sendMessageWithResult(BenchmarkFixtures.NORMAL_TOPIC, "tagA", message, "product"));
+    }
+    
+    /**
+     * 同步发送接口，不指定集群，按路由表选择目标集群
+     */
+    @Benchmark
+    public void sendMessageRouted(Blackhole blackhole) {
+        blackhole.consume(producer.sendMessageWithResult(BenchmarkFixtures.NORMAL_TOPIC, "tagA", message, null));
+    }
+    
+    /**
+     * 同步发送接口，MessageDTO二进制编码
+     */
+    @Benchmark
+    public void sendMessageBinary(Blackhole blackhole) {
+        blackhole.consume(producer.sendMessageWithResult(BenchmarkFixtures.BINARY_TOPIC, "tagA", message, "product"));
+    }
+    
+    /**
+     * 顺序消息，按分片键选择队列
+     */
+    @Benchmark
+    public void sendOrderlyMessage(Blackhole blackhole) {
+        blackhole.consume(producer.sendMessageWithResult(BenchmarkFixtures.ORDERLY_TOPIC, "tagA", message, "product"));
+    }
+    
+    /**
+     * 异步发送接口
+     */
+    @Benchmark
+    public void sendMessageAsync(Blackhole blackhole) {
+        blackhole.consume(producer.sendMessageAsync(BenchmarkFixtures.NORMAL_TOPIC, "tagA", message, "product").join());
+    }
+    
+    private static RocketMQTemplate stubTemplate(String group) {
+        RocketMQTemplate template = new RocketMQTemplate();
+        template.setProducer(new StubProducer(group));
+        return template;
+    }
+    
+    /**
+     * 直接回调发送成功的生产者，发送结果预先创建，不计入分配
+     */
+    private static class StubProducer extends DefaultMQProducer {
+        
+        private final List<MessageQueue> queues = new ArrayList<>();
+        
+        private final SendResult sendResult;
+        
+        StubProducer(String group) {
+            super(group);
+            for (int i = 0; i < 8; i++) {
+                queues.add(new MessageQueue(BenchmarkFixtures.NORMAL_TOPIC, "broker-a", i));
+            }
+            sendResult = new SendResult(SendStatus.SEND_OK, "msgId", "offsetMsgId", queues.get(0), 0L);
+        }
+        
+        @Override
+        public void send(Message msg, SendCallback sendCallback, long timeout) {
+            sendCallback.onSuccess(sendResult);
+        }
+        
+        @Override
+        public void send(Message msg, MessageQueueSelector selector, Object arg, SendCallback sendCallback, long timeout) {
+            selector.select(queues, msg, arg);
+            sendCallback.onSuccess(sendResult);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.rocketmqdemo.loadtest;
+
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.TopicConfig;
+import org.apache.rocketmq.common.constant.PermName;
+import org.apache.rocketmq.common.namesrv.NamesrvConfig;
+import org.apache.rocketmq.namesrv.NamesrvController;
+import org.apache.rocketmq.remoting.netty.NettyClientConfig;
+import org.apache.rocketmq.remoting.netty.NettyServerConfig;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+
+import java.io.File;
+
+/**
+ * 进程内启动的单个RocketMQ集群：一个NameServer加一个Broker，数据写入临时目录
+ */
+class EmbeddedRocketMQ {
+
+    private static final String LOCALHOST = "127.0.0.1";
+
+    // 每个队列数
+    private static final int QUEUE_NUMS = 4;
+
+    private final String clusterName;
+
+    private final int namesrvPort;
+
+    private final int brokerPort;
+
+    private final File storeDir;
+
+    private NamesrvController namesrvController;
+
+    private BrokerController brokerController;
+
+    /**
+     * @param clusterName 集群名称
+     * @param namesrvPort NameServer端口
+     * @param brokerPort Broker端口，Broker同时占用brokerPort-2（VIP通道）和brokerPort+1（HA）
+     * @param storeDir 数据目录
+     */
+    EmbeddedRocketMQ(String clusterName, int namesrvPort, int brokerPort, File storeDir) {
+        this.clusterName = clusterName;
+        this.namesrvPort = namesrvPort;
+        this.brokerPort = brokerPort;
+        this.storeDir = storeDir;
+    }
+
+    void start() throws Exception {
+        NamesrvConfig namesrvConfig = new NamesrvConfig();
+        namesrvConfig.setKvConfigPath(new File(storeDir, "namesrv/kvConfig.json").getPath());
+        namesrvConfig.setConfigStorePath(new File(storeDir, "namesrv/namesrv.properties").getPath());
+        NettyServerConfig namesrvNettyConfig = new NettyServerConfig();
+        namesrvNettyConfig.setListenPort(namesrvPort);
+        namesrvController = new NamesrvController(namesrvConfig, namesrvNettyConfig);
+        if (!namesrvController.initialize()) {
+            throw new IllegalStateException(clusterName + "集群NameServer初始化失败");
+        }
+        namesrvController.start();
+
+        BrokerConfig brokerConfig = new BrokerConfig();
+        brokerConfig.setBrokerClusterName(clusterName);
+        brokerConfig.setBrokerName(clusterName + "-broker");
+        brokerConfig.setBrokerIP1(LOCALHOST);
+        brokerConfig.setNamesrvAddr(getNamesrvAddr());
+        brokerConfig.setAutoCreateTopicEnable(true);
+        brokerConfig.setAutoCreateSubscriptionGroup(true);
+        NettyServerConfig brokerNettyConfig = new NettyServerConfig();
+        brokerNettyConfig.setListenPort(brokerPort);
+        MessageStoreConfig storeConfig = new MessageStoreConfig();
+        String storeRoot = new File(storeDir, "broker").getPath();
+        storeConfig.setStorePathRootDir(storeRoot);
+        storeConfig.setStorePathCommitLog(new File(storeRoot, "commitlog").getPath());
+        storeConfig.setMappedFileSizeCommitLog(64 * 1024 * 1024);
+        storeConfig.setHaListenPort(brokerPort + 1);
+        // 压测机器磁盘使用率较高时不拒绝写入
+        storeConfig.setDiskMaxUsedSpaceRatio(98);
+        brokerController = new BrokerController(brokerConfig, brokerNettyConfig, new NettyClientConfig(), storeConfig);
+        if (!brokerController.initialize()) {
+            throw new IllegalStateException(clusterName + "集群Broker初始化失败");
+        }
+        brokerController.start();
+    }
+
+    /**
+     * 创建topic并立即注册到NameServer，避免等待Broker定时注册
+     */
+    void createTopic(String topic) {
+        TopicConfig topicConfig = new TopicConfig(topic, QUEUE_NUMS, QUEUE_NUMS, PermName.PERM_READ | PermName.PERM_WRITE);
+        brokerController.getTopicConfigManager().updateTopicConfig(topicConfig);
+        brokerController.registerIncrementBrokerData(topicConfig, brokerController.getTopicConfigManager().getDataVersion());
+    }
+
+    String getNamesrvAddr() {
+        return LOCALHOST + ":" + namesrvPort;
+    }
+
+    void shutdown() {
+        if (brokerController != null) {
+            brokerController.shutdown();
+        }
+        if (namesrvController != null) {
+            namesrvController.shutdown();
+        }
+    }
+}
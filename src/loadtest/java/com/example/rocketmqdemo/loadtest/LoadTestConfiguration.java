@@ -0,0 +1,31 @@
+package com.example.rocketmqdemo.loadtest;
+
+import com.example.rocketmqdemo.consumer.DemoMessageConsumer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+/**
+ * 压测时替换的组件：Redis连接指向进程内的Redis替身（单节点），消费者监听器替换为记录消费情况的监听器
+ * 只在loadtest配置的classpath中存在
+ */
+@Configuration
+public class LoadTestConfiguration {
+    
+    @Bean
+    @Primary
+    public RedisConnectionFactory loadTestRedisConnectionFactory(@Value("${loadtest.redis.host}") String host,
+                                                                 @Value("${loadtest.redis.port}") int port) {
+        return new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port));
+    }
+    
+    @Bean
+    @Primary
+    public DemoMessageConsumer recordingMessageConsumer() {
+        return new RecordingMessageConsumer();
+    }
+}
@@ -0,0 +1,349 @@
+package com.example.rocketmqdemo.loadtest;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.example.rocketmqdemo.RocketMqDemoApplication;
+import com.github.fppt.jedismock.RedisServer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 端到端压测：进程内启动原始集群和一个业务集群（各一个NameServer和Broker）以及Redis替身，
+ * 启动应用后按目标速率调用发送接口，分阶段切换生产者双写开关和消费者开关，
+ * 输出每个阶段的吞吐、发送延迟、端到端延迟分位数、丢失和重复的消息数；
+ * 并通过消费堆积接口检查迁移过程中的堆积：切换消费者前原始集群的堆积降为0，消费完成后业务集群的堆积降为0
+ *
+ * 参数通过系统属性传入：
+ * loadtest.rate 每秒发送数（默认200），loadtest.phase-seconds 每个阶段时长（默认30），
+ * loadtest.drain-seconds 发送结束后等待消费完成的最长时间（默认60），loadtest.sender-threads 发送线程数（默认32）；
+ * 应用配置同样可以通过系统属性覆盖，如 -Drocketmq.consumer.switch-mode=MAKE_BEFORE_BREAK
+ */
+public class LoadTestHarness {
+    
+    private static final String TOPIC = "TOPIC_LOADTEST";
+    
+    private static final String CONSUMER_GROUP = "CID_LOADTEST";
+    
+    private static final String BUSINESS_CLUSTER = "product";
+    
+    // 发送结束后持续该时长没有收到新消息即认为消费完成
+    private static final long DRAIN_IDLE_MS = 5000;
+    
+    // 等待消费堆积清零时的查询间隔，消费位点由客户端定期提交，堆积不会立即降为0
+    private static final long LAG_POLL_INTERVAL_MS = 1000;
+    
+    /**
+     * 压测阶段，按迁移顺序执行：开启双写，消费者切换到业务集群，关闭双写
+     */
+    private static final Phase[] PHASES = {
+            new Phase("dual-write", true, false),
+            new Phase("consumer-switch", true, true),
+            new Phase("single-write", false, true)
+    };
+    
+    private final int rate = Integer.getInteger("loadtest.rate", 200);
+    
+    private final int phaseSeconds = Integer.getInteger("loadtest.phase-seconds", 30);
+    
+    private final int drainSeconds = Integer.getInteger("loadtest.drain-seconds", 60);
+    
+    private final int senderThreads = Integer.getInteger("loadtest.sender-threads", 32);
+    
+    private final AtomicLong sequence = new AtomicLong();
+    
+    private final AtomicLong pendingSends = new AtomicLong();
+    
+    // 各检查点的消费堆积，key为检查点/集群，查询失败时为-1
+    private final Map<String, Long> lagChecks = new LinkedHashMap<>();
+    
+    private String baseUrl;
+    
+    public static void main(String[] args) throws Exception {
+        int exitCode = 0;
+        try {
+            new LoadTestHarness().run();
+        } catch (Exception e) {
+            e.printStackTrace();
+            exitCode = 1;
+        }
+        // Broker和Netty的非守护线程不会自行退出
+        System.exit(exitCode);
+    }
+    
+    private void run() throws Exception {
+        File workDir = Files.createTempDirectory("rocketmq-loadtest").toFile();
+        log("工作目录: " + workDir);
+        
+        RedisServer redis = RedisServer.newRedisServer(0).start();
+        EmbeddedRocketMQ origin = new EmbeddedRocketMQ("origin", 19876, 20911, new File(workDir, "origin"));
+        EmbeddedRocketMQ business = new EmbeddedRocketMQ(BUSINESS_CLUSTER, 29876, 30911, new File(workDir, BUSINESS_CLUSTER));
+        ConfigurableApplicationContext context = null;
+        try {
+            origin.start();
+            business.start();
+            origin.createTopic(TOPIC);
+            business.createTopic(TOPIC);
+            log("集群已启动, 原始集群: " + origin.getNamesrvAddr() + ", 业务集群: " + business.getNamesrvAddr()
+                    + ", Redis: " + redis.getHost() + ":" + redis.getBindPort());
+            
+            // 以系统属性传入，优先级高于application.yml；命令行已指定的属性保持不变
+            for (Map.Entry<String, Object> entry : appProperties(origin, business, redis, workDir).entrySet()) {
+                System.getProperties().putIfAbsent(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+            context = new SpringApplicationBuilder(RocketMqDemoApplication.class, LoadTestConfiguration.class).run();
+            baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port") + "/api/mq";
+            log("应用已启动: " + baseUrl);
+            
+            runPhases();
+            
+            log("消费者幂等统计: " + get("/consumer/dedup"));
+            log("最近一次消费者切换: " + get("/consumer/switch/" + CONSUMER_GROUP + "/" + TOPIC));
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+            business.shutdown();
+            origin.shutdown();
+            redis.stop();
+        }
+    }
+    
+    private void runPhases() throws Exception {
+        ExecutorService senders = Executors.newFixedThreadPool(senderThreads);
+        LoadTestRecorder recorder = LoadTestRecorder.getInstance();
+        Map<String, Long> phaseDurations = new LinkedHashMap<>();
+        Boolean dualWrite = null;
+        Boolean consumeBusiness = null;
+        checkLag("发送前", "origin");
+        checkLag("发送前", BUSINESS_CLUSTER);
+        for (Phase phase : PHASES) {
+            if (dualWrite == null || dualWrite != phase.dualWrite) {
+                post("/producer/switch?enabled=" + phase.dualWrite);
+                dualWrite = phase.dualWrite;
+            }
+            if (consumeBusiness == null || consumeBusiness != phase.consumeBusiness) {
+                if (Boolean.FALSE.equals(consumeBusiness) && phase.consumeBusiness) {
+                    // 按迁移步骤，原始集群的堆积清零后再把消费者切换到业务集群
+                    awaitLagDrained("切换消费者前", "origin");
+                }
+                post("/consumer/switch/" + CONSUMER_GROUP + "/" + TOPIC + "?enabled=" + phase.consumeBusiness);
+                consumeBusiness = phase.consumeBusiness;
+            }
+            log("阶段开始: " + phase.name + ", 双写: " + phase.dualWrite + ", 消费业务集群: " + phase.consumeBusiness);
+            
+            long phaseStart = System.currentTimeMillis();
+            long phaseEnd = phaseStart + phaseSeconds * 1000L;
+            long issued = 0;
+            while (System.currentTimeMillis() < phaseEnd) {
+                // 按已经过的时间补齐应发送的数量，发送线程跟不上时请求在队列中排队
+                long due = (System.currentTimeMillis() - phaseStart) * rate / 1000 - issued;
+                for (long i = 0; i < due; i++) {
+                    long seq = sequence.incrementAndGet();
+                    pendingSends.incrementAndGet();
+                    senders.execute(() -> send(seq, phase.name));
+                }
+                issued += Math.max(0, due);
+                Thread.sleep(10);
+            }
+            phaseDurations.put(phase.name, System.currentTimeMillis() - phaseStart);
+        }
+        senders.shutdown();
+        senders.awaitTermination(drainSeconds, TimeUnit.SECONDS);
+        
+        // 等待消费完成：持续一段时间没有收到新消息，或达到最长等待时间
+        long drainDeadline = System.currentTimeMillis() + drainSeconds * 1000L;
+        while (System.currentTimeMillis() < drainDeadline
+                && System.currentTimeMillis() - recorder.getLastReceivedAt() < DRAIN_IDLE_MS) {
+            Thread.sleep(500);
+        }
+        
+        awaitLagDrained("消费完成后", BUSINESS_CLUSTER);
+        // 切换后仍双写到原始集群的消息不再被该消费组消费，这部分堆积是预期的
+        checkLag("消费完成后", "origin");
+        
+        printReport(recorder.summarize(phaseDurations));
+        log("消费堆积检查（-1表示查询失败）: " + lagChecks);
+        Long remaining = lagChecks.get("消费完成后/" + BUSINESS_CLUSTER);
+        if (remaining == null || remaining != 0) {
+            log("警告: 消费完成后业务集群的堆积未清零: " + remaining);
+        }
+    }
+    
+    /**
+     * 轮询消费堆积接口，直到指定集群的总堆积降为0或超过最长等待时间，记录最后一次的结果
+     */
+    private void awaitLagDrained(String checkpoint, String cluster) throws Exception {
+        long deadline = System.currentTimeMillis() + drainSeconds * 1000L;
+        long start = System.currentTimeMillis();
+        long lag = queryLag(cluster);
+        while (lag != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(LAG_POLL_INTERVAL_MS);
+            lag = queryLag(cluster);
+        }
+        lagChecks.put(checkpoint + "/" + cluster, lag);
+        log("消费堆积 - " + checkpoint + ", 集群: " + cluster + ", 堆积: " + lag
+                + ", 等待: " + (System.currentTimeMillis() - start) + "ms");
+    }
+    
+    private void checkLag(String checkpoint, String cluster) throws IOException {
+        long lag = queryLag(cluster);
+        lagChecks.put(checkpoint + "/" + cluster, lag);
+        log("消费堆积 - " + checkpoint + ", 集群: " + cluster + ", 堆积: " + lag);
+    }
+    
+    /**
+     * 查询消费组在指定集群上的总堆积，消费组在该集群上还没有消费位点等查询失败的情况返回-1
+     */
+    private long queryLag(String cluster) throws IOException {
+        JSONObject response = JSON.parseObject(get("/consumer/lag/" + CONSUMER_GROUP + "/" + TOPIC + "?cluster=" + BUSINESS_CLUSTER));
+        JSONObject data = response.getJSONObject("data");
+        JSONObject lag = data == null ? null : data.getJSONObject(cluster);
+        return lag != null && lag.getBooleanValue("success") ? lag.getLongValue("totalLag") : -1;
+    }
+    
+    private void send(long seq, String phase) {
+        LoadTestRecorder recorder = LoadTestRecorder.getInstance();
+        recorder.onSendStart(seq, phase);
+        boolean success = false;
+        try {
+            // 不指定集群，由生产者路由表按topic-clusters选择业务集群
+            JSONObject response = JSON.parseObject(request("POST", "/send/" + TOPIC,
+                    LoadTestRecorder.CONTENT_PREFIX + seq));
+            success = response.getBooleanValue("success");
+        } catch (Exception e) {
+            // 请求失败计为发送失败
+        } finally {
+            recorder.onSendComplete(seq, success);
+            pendingSends.decrementAndGet();
+        }
+    }
+    
+    private void printReport(Map<String, LoadTestRecorder.PhaseReport> reports) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%n%-16s %8s %8s %10s %8s %8s %24s %24s%n",
+                "phase", "sent", "failed", "msg/s", "lost", "dup", "send p50/p95/p99/max ms", "e2e p50/p95/p99/max ms"));
+        for (Map.Entry<String, LoadTestRecorder.PhaseReport> entry : reports.entrySet()) {
+            LoadTestRecorder.PhaseReport report = entry.getValue();
+            sb.append(String.format("%-16s %8d %8d %10.1f %8d %8d %24s %24s%n",
+                    entry.getKey(), report.sent, report.sendFailed, report.throughput, report.lost, report.duplicated,
+                    join(report.sendLatencyMs), join(report.endToEndLatencyMs)));
+        }
+        log(sb.toString());
+    }
+    
+    private static String join(long[] values) {
+        return values[0] + "/" + values[1] + "/" + values[2] + "/" + values[3];
+    }
+    
+    private Map<String, Object> appProperties(EmbeddedRocketMQ origin, EmbeddedRocketMQ business, RedisServer redis, File workDir) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", 0);
+        properties.put("loadtest.redis.host", redis.getHost());
+        properties.put("loadtest.redis.port", redis.getBindPort());
+        properties.put("rocketmq.name-server", origin.getNamesrvAddr());
+        for (String cluster : new String[]{"product", "asset", "operation", "risk", "base"}) {
+            properties.put("rocketmq." + cluster + "-address", business.getNamesrvAddr());
+        }
+        properties.put("rocketmq.producer.topics", TOPIC);
+        properties.put("rocketmq.producer.topic-clusters", BUSINESS_CLUSTER);
+        properties.put("rocketmq.producer.msg-types", "normal");
+        properties.put("rocketmq.producer.check-immunity-time-in-seconds", "10");
+        properties.put("rocketmq.producer.ack-policies", "PRIMARY_ONLY");
+        properties.put("rocketmq.producer.codecs", "json");
+        properties.put("rocketmq.producer.compressions", "none");
+        properties.put("rocketmq.consumer.topics", TOPIC);
+        properties.put("rocketmq.consumer.topic-clusters", BUSINESS_CLUSTER);
+        properties.put("rocketmq.consumer.group", CONSUMER_GROUP);
+        properties.put("rocketmq.consumer.msg-types", "normal");
+        properties.put("rocketmq.consumer.beans", "recordingMessageConsumer");
+        properties.put("rocketmq.consumer.init-sub-exps", "*");
+        properties.put("rocketmq.consumer.subscribe-types", "false");
+        properties.put("rocketmq.consumer.suspend-time-millis", "1000");
+        properties.put("rocketmq.consumer.max-reconsume-times", "20");
+        properties.put("rocketmq.consumer.consume-thread-nums", "20");
+        properties.put("rocketmq.consumer.consume-timeouts", "15");
+        properties.put("rocketmq.consumer.consume-batch-max-sizes", "1");
+        properties.put("rocketmq.consumer.pull-batch-sizes", "32");
+        properties.put("rocketmq.consumer.pull-thresholds-for-queue", "1000");
+        properties.put("rocketmq.journal.path", new File(workDir, "journal").getPath());
+        // 检查堆积时每次都查询Broker，不使用缓存的结果
+        properties.put("rocketmq.monitor.lag-cache-ttl-ms", "0");
+        // 每条消息的INFO日志会影响压测结果
+        properties.put("logging.level.com.example.rocketmqdemo", "WARN");
+        properties.put("logging.level.RocketmqBroker", "WARN");
+        properties.put("logging.level.RocketmqStore", "WARN");
+        properties.put("logging.level.RocketmqNamesrv", "WARN");
+        properties.put("logging.level.RocketmqClient", "WARN");
+        return properties;
+    }
+    
+    private String get(String path) throws IOException {
+        return request("GET", path, null);
+    }
+    
+    private String post(String path) throws IOException {
+        return request("POST", path, null);
+    }
+    
+    private String request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(30000);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "text/plain;charset=UTF-8");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        try (InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while (in != null && (read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+    
+    private static void log(String message) {
+        System.out.println("[loadtest] " + message);
+    }
+    
+    /**
+     * 压测阶段及该阶段的开关状态
+     */
+    private static final class Phase {
+        
+        private final String name;
+        
+        private final boolean dualWrite;
+        
+        private final boolean consumeBusiness;
+        
+        private Phase(String name, boolean dualWrite, boolean consumeBusiness) {
+            this.name = name;
+            this.dualWrite = dualWrite;
+            this.consumeBusiness = consumeBusiness;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.rocketmqdemo.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 记录每条压测消息的发送和消费情况，按发送时所处的阶段汇总
+ */
+class LoadTestRecorder {
+
+    static final String CONTENT_PREFIX = "loadtest-";
+
+    private static final LoadTestRecorder INSTANCE = new LoadTestRecorder();
+
+    private final ConcurrentHashMap<Long, Record> records = new ConcurrentHashMap<>();
+
+    private final AtomicLong lastReceivedAt = new AtomicLong();
+
+    static LoadTestRecorder getInstance() {
+        return INSTANCE;
+    }
+
+    void onSendStart(long seq, String phase) {
+        records.put(seq, new Record(phase, System.currentTimeMillis()));
+    }
+
+    void onSendComplete(long seq, boolean success) {
+        Record record = records.get(seq);
+        if (record != null) {
+            record.sendCompletedAt = System.currentTimeMillis();
+            record.sendSuccess = success;
+        }
+    }
+
+    /**
+     * 消费者收到消息，content为发送时的消息内容
+     */
+    void onReceive(String content) {
+        if (content == null || !content.startsWith(CONTENT_PREFIX)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Record record = records.get(Long.parseLong(content.substring(CONTENT_PREFIX.length())));
+        if (record == null) {
+            return;
+        }
+        if (record.receiveCount.incrementAndGet() == 1) {
+            record.firstReceivedAt = now;
+        }
+        lastReceivedAt.set(now);
+    }
+
+    long getLastReceivedAt() {
+        return lastReceivedAt.get();
+    }
+
+    /**
+     * 按阶段汇总：发送量、发送失败、吞吐、端到端延迟分位数、丢失和重复
+     * @param phaseDurationsMs 每个阶段的实际时长，按阶段顺序
+     */
+    Map<String, PhaseReport> summarize(Map<String, Long> phaseDurationsMs) {
+        Map<String, List<Record>> byPhase = new LinkedHashMap<>();
+        for (String phase : phaseDurationsMs.keySet()) {
+            byPhase.put(phase, new ArrayList<>());
+        }
+        for (Record record : records.values()) {
+            byPhase.computeIfAbsent(record.phase, k -> new ArrayList<>()).add(record);
+        }
+
+        Map<String, PhaseReport> reports = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Record>> entry : byPhase.entrySet()) {
+            PhaseReport report = new PhaseReport();
+            List<Long> latencies = new ArrayList<>();
+            List<Long> sendLatencies = new ArrayList<>();
+            for (Record record : entry.getValue()) {
+                report.sent++;
+                if (!record.sendSuccess) {
+                    report.sendFailed++;
+                    continue;
+                }
+                sendLatencies.add(record.sendCompletedAt - record.sendStartedAt);
+                int received = record.receiveCount.get();
+                if (received == 0) {
+                    report.lost++;
+                } else {
+                    latencies.add(record.firstReceivedAt - record.sendStartedAt);
+                    if (received > 1) {
+                        report.duplicated++;
+                    }
+                }
+            }
+            Long durationMs = phaseDurationsMs.get(entry.getKey());
+            report.throughput = durationMs != null && durationMs > 0 ? report.sent * 1000D / durationMs : 0D;
+            report.sendLatencyMs = percentiles(sendLatencies);
+            report.endToEndLatencyMs = percentiles(latencies);
+            reports.put(entry.getKey(), report);
+        }
+        return reports;
+    }
+
+    private static long[] percentiles(List<Long> values) {
+        if (values.isEmpty()) {
+            return new long[4];
+        }
+        long[] sorted = new long[values.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = values.get(i);
+        }
+        Arrays.sort(sorted);
+        return new long[]{at(sorted, 0.50), at(sorted, 0.95), at(sorted, 0.99), sorted[sorted.length - 1]};
+    }
+
+    private static long at(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    /**
+     * 单条消息的记录
+     */
+    private static class Record {
+
+        private final String phase;
+
+        private final long sendStartedAt;
+
+        private volatile long sendCompletedAt;
+
+        private volatile boolean sendSuccess;
+
+        private volatile long firstReceivedAt;
+
+        private final AtomicInteger receiveCount = new AtomicInteger();
+
+        Record(String phase, long sendStartedAt) {
+            this.phase = phase;
+            this.sendStartedAt = sendStartedAt;
+        }
+    }
+
+    /**
+     * 单个阶段的汇总，延迟数组依次为p50、p95、p99、max
+     */
+    static class PhaseReport {
+
+        long sent;
+
+        long sendFailed;
+
+        long lost;
+
+        long duplicated;
+
+        double throughput;
+
+        long[] sendLatencyMs;
+
+        long[] endToEndLatencyMs;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.rocketmqdemo.loadtest;
+
+import com.example.rocketmqdemo.codec.MessageCodecRegistry;
+import com.example.rocketmqdemo.consumer.DemoMessageConsumer;
+import com.example.rocketmqdemo.model.MessageDTO;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+
+/**
+ * 在业务监听器消费成功后记录收到的压测消息
+ */
+class RecordingMessageConsumer extends DemoMessageConsumer {
+    
+    @Autowired
+    private MessageCodecRegistry codecRegistry;
+    
+    @Override
+    public ConsumeConcurrentlyStatus consumeMessage(List<MessageExt> msgs, ConsumeConcurrentlyContext context) {
+        ConsumeConcurrentlyStatus status = super.consumeMessage(msgs, context);
+        if (status == ConsumeConcurrentlyStatus.CONSUME_SUCCESS) {
+            for (MessageExt msg : msgs) {
+                MessageDTO message = codecRegistry.decode(msg, MessageDTO.class);
+                LoadTestRecorder.getInstance().onReceive(message.getContent());
+            }
+        }
+        return status;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.rocketmqdemo.codec;
+
+/**
+ * 消息体压缩算法
+ * 压缩后的消息通过{@link #COMPRESSION_PROPERTY}标记算法，并在{@link #RAW_LENGTH_PROPERTY}中记录原始长度
+ */
+public interface Compressor {
+    
+    /**
+     * 消息属性中的压缩算法键
+     */
+    String COMPRESSION_PROPERTY = "compression";
+    
+    /**
+     * 消息属性中的原始长度键
+     */
+    String RAW_LENGTH_PROPERTY = "rawLength";
+    
+    /**
+     * 算法名称，用于配置和消息属性
+     */
+    String name();
+    
+    /**
+     * 压缩消息体
+     */
+    byte[] compress(byte[] data);
+    
+    /**
+     * 解压消息体
+     * @param data 压缩后的数据
+     * @param rawLength 原始长度
+     */
+    byte[] decompress(byte[] data, int rawLength);
+}
@@ -0,0 +1,125 @@
+package com.example.rocketmqdemo.codec;
+
+import com.example.rocketmqdemo.config.MQProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 压缩算法注册表
+ * 生产者按rocketmq.producer.compressions为每个topic选择压缩算法，消息体超过阈值时才压缩；
+ * 消费者根据消息的compression属性解压，未压缩的消息不做任何处理
+ */
+@Slf4j
+@Component
+public class CompressorRegistry {
+    
+    @Autowired
+    private MQProperties mqProperties;
+    
+    @Autowired
+    private List<Compressor> compressors;
+    
+    private final Map<String, Compressor> compressorsByName = new HashMap<>();
+    
+    // 每个topic配置的压缩算法，未配置的topic不压缩
+    private final Map<String, Compressor> topicCompressors = new HashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        for (Compressor compressor : compressors) {
+            compressorsByName.put(compressor.name(), compressor);
+        }
+        
+        MQProperties.Producer producer = mqProperties.getProducer();
+        if (producer != null && producer.getTopics() != null && producer.getCompressions() != null) {
+            String[] topics = producer.getTopics().split(";");
+            String[] names = producer.getCompressions().split(";");
+            for (int i = 0; i < topics.length && i < names.length; i++) {
+                String name = names[i].trim();
+                if (name.isEmpty() || "none".equals(name)) {
+                    continue;
+                }
+                Compressor compressor = compressorsByName.get(name);
+                if (compressor == null) {
+                    log.warn("未知的压缩算法: {}, topic: {} 不压缩", name, topics[i]);
+                    continue;
+                }
+                topicCompressors.put(topics[i].trim(), compressor);
+            }
+        }
+        log.info("可用的压缩算法: {}, 启用压缩的topic: {}, 压缩阈值: {}字节",
+                compressorsByName.keySet(), topicCompressors.keySet(), getThreshold());
+    }
+    
+    /**
+     * 获取topic配置的压缩算法，未配置时返回null
+     */
+    public Compressor forTopic(String topic) {
+        return topicCompressors.get(topic);
+    }
+    
+    /**
+     * 压缩阈值，消息体超过该长度才压缩
+     */
+    public int getThreshold() {
+        MQProperties.Producer producer = mqProperties.getProducer();
+        return producer != null ? producer.getCompressThresholdBytes() : Integer.MAX_VALUE;
+    }
+    
+    /**
+     * 如果消息被压缩过，就地替换为解压后的消息体并清除压缩标记
+     * @return 是否进行了解压
+     */
+    public boolean decompressIfNeeded(Message message) {
+        String name = message.getUserProperty(Compressor.COMPRESSION_PROPERTY);
+        if (name == null) {
+            return false;
+        }
+        Compressor compressor = compressorsByName.get(name);
+        if (compressor == null) {
+            throw new MessageConversionException("未知的压缩算法: " + name);
+        }
+        int rawLength = parseRawLength(message.getUserProperty(Compressor.RAW_LENGTH_PROPERTY));
+        message.setBody(compressor.decompress(message.getBody(), rawLength));
+        MessageAccessor.clearProperty(message, Compressor.COMPRESSION_PROPERTY);
+        MessageAccessor.clearProperty(message, Compressor.RAW_LENGTH_PROPERTY);
+        return true;
+    }
+    
+    /**
+     * 原始长度来自消息属性，解压前按{@link #getMaxDecompressedBytes()}校验，避免按损坏或伪造的长度分配超大缓冲区
+     */
+    private int parseRawLength(String rawLength) {
+        if (rawLength == null) {
+            throw new MessageConversionException("压缩消息缺少原始长度属性: " + Compressor.RAW_LENGTH_PROPERTY);
+        }
+        int length;
+        try {
+            length = Integer.parseInt(rawLength.trim());
+        } catch (NumberFormatException e) {
+            throw new MessageConversionException("压缩消息的原始长度无法解析: " + rawLength, e);
+        }
+        int max = getMaxDecompressedBytes();
+        if (length < 0 || length > max) {
+            throw new MessageConversionException("压缩消息的原始长度超出范围: " + length + ", 允许的最大值: " + max);
+        }
+        return length;
+    }
+    
+    /**
+     * 解压时允许的最大原始长度
+     */
+    public int getMaxDecompressedBytes() {
+        MQProperties.Producer producer = mqProperties.getProducer();
+        return producer != null ? producer.getMaxDecompressedBytes() : 4 * 1024 * 1024;
+    }
+}
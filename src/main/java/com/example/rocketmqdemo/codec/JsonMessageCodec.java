@@ -0,0 +1,115 @@
+package com.example.rocketmqdemo.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JSON编解码器，编码结果与RocketMQTemplate使用的MappingJackson2MessageConverter完全一致，保证向后兼容
+ */
+@Component
+public class JsonMessageCodec implements MessageCodec {
+    
+    public static final String NAME = "json";
+    
+    public static final String CONTENT_TYPE = "application/json";
+    
+    private final MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+    
+    // 解码用的ObjectMapper，兼容旧格式中按对象属性序列化的LocalDateTime
+    private final ObjectMapper decodeMapper;
+    
+    // 每个消息体类型的ObjectReader，避免每次解码都解析类型
+    private final ConcurrentHashMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    
+    public JsonMessageCodec() {
+        SimpleModule module = new SimpleModule();
+        module.addDeserializer(LocalDateTime.class, new CompatibleLocalDateTimeDeserializer());
+        decodeMapper = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .registerModule(module);
+    }
+    
+    @Override
+    public String name() {
+        return NAME;
+    }
+    
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+    
+    @Override
+    public boolean supports(Class<?> type) {
+        return true;
+    }
+    
+    @Override
+    public byte[] encode(Object payload) {
+        org.springframework.messaging.Message<?> converted = converter.toMessage(payload, null);
+        if (converted == null) {
+            throw new MessageConversionException("无法转换消息内容, 类型: " + payload.getClass().getName());
+        }
+        Object convertedPayload = converted.getPayload();
+        return convertedPayload instanceof byte[]
+                ? (byte[]) convertedPayload
+                : String.valueOf(convertedPayload).getBytes(StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] body, Class<T> type) {
+        if (type == String.class || type == Object.class) {
+            return (T) new String(body, StandardCharsets.UTF_8);
+        }
+        try {
+            return readers.computeIfAbsent(type, decodeMapper::readerFor).readValue(body);
+        } catch (IOException e) {
+            throw new MessageConversionException("JSON消息解码失败, 类型: " + type.getName(), e);
+        }
+    }
+    
+    /**
+     * 同时支持ISO字符串、数组以及旧版按对象属性序列化的LocalDateTime
+     */
+    private static class CompatibleLocalDateTimeDeserializer extends StdDeserializer<LocalDateTime> {
+        
+        private static final long serialVersionUID = 1L;
+        
+        CompatibleLocalDateTimeDeserializer() {
+            super(LocalDateTime.class);
+        }
+        
+        @Override
+        public LocalDateTime deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                return LocalDateTimeDeserializer.INSTANCE.deserialize(parser, context);
+            }
+            JsonNode node = parser.getCodec().readTree(parser);
+            return LocalDateTime.of(
+                    node.path("year").asInt(),
+                    node.path("monthValue").asInt(1),
+                    node.path("dayOfMonth").asInt(1),
+                    node.path("hour").asInt(),
+                    node.path("minute").asInt(),
+                    node.path("second").asInt(),
+                    node.path("nano").asInt());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.rocketmqdemo.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.stereotype.Component;
+
+/**
+ * LZ4压缩，压缩和解压速度快，适合对延迟敏感的topic
+ * 消息体来自Broker，不可信，解压使用带边界检查的safeDecompressor，输出不超过校验过的原始长度
+ */
+@Component
+public class Lz4Compressor implements Compressor {
+    
+    public static final String NAME = "lz4";
+    
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    
+    private final LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+    
+    @Override
+    public String name() {
+        return NAME;
+    }
+    
+    @Override
+    public byte[] compress(byte[] data) {
+        return compressor.compress(data);
+    }
+    
+    @Override
+    public byte[] decompress(byte[] data, int rawLength) {
+        byte[] result = new byte[rawLength];
+        int length;
+        try {
+            length = decompressor.decompress(data, 0, data.length, result, 0, rawLength);
+        } catch (LZ4Exception e) {
+            throw new MessageConversionException("LZ4解压失败", e);
+        }
+        if (length != rawLength) {
+            throw new MessageConversionException("解压后的长度与原始长度不一致, 期望: " + rawLength + ", 实际: " + length);
+        }
+        return result;
+    }
+}
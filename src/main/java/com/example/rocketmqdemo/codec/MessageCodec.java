@@ -0,0 +1,38 @@
+package com.example.rocketmqdemo.codec;
+
+/**
+ * 消息体编解码器
+ * 生产者按topic选择编解码器，并把{@link #contentType()}写入消息属性，消费者根据该属性选择解码方式
+ */
+public interface MessageCodec {
+    
+    /**
+     * 消息属性中的内容类型键，与Spring消息头保持一致
+     */
+    String CONTENT_TYPE_PROPERTY = "contentType";
+    
+    /**
+     * 编解码器名称，用于配置
+     */
+    String name();
+    
+    /**
+     * 内容类型，写入消息属性
+     */
+    String contentType();
+    
+    /**
+     * 是否支持编解码该类型
+     */
+    boolean supports(Class<?> type);
+    
+    /**
+     * 编码消息内容
+     */
+    byte[] encode(Object payload);
+    
+    /**
+     * 解码消息体
+     */
+    <T> T decode(byte[] body, Class<T> type);
+}
@@ -0,0 +1,90 @@
+package com.example.rocketmqdemo.codec;
+
+import com.example.rocketmqdemo.config.MQProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.Message;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编解码器注册表
+ * 生产者按rocketmq.producer.codecs为每个topic选择编解码器，消费者按消息的contentType属性选择解码器，
+ * 未配置或无法识别时使用JSON
+ */
+@Slf4j
+@Component
+public class MessageCodecRegistry {
+    
+    @Autowired
+    private MQProperties mqProperties;
+    
+    @Autowired
+    private List<MessageCodec> codecs;
+    
+    @Autowired
+    private JsonMessageCodec jsonMessageCodec;
+    
+    private final Map<String, MessageCodec> codecsByName = new HashMap<>();
+    
+    private final Map<String, MessageCodec> codecsByContentType = new HashMap<>();
+    
+    // 每个topic配置的编解码器
+    private final Map<String, MessageCodec> topicCodecs = new HashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        for (MessageCodec codec : codecs) {
+            codecsByName.put(codec.name(), codec);
+            codecsByContentType.put(codec.contentType(), codec);
+        }
+        
+        MQProperties.Producer producer = mqProperties.getProducer();
+        if (producer != null && producer.getTopics() != null && producer.getCodecs() != null) {
+            String[] topics = producer.getTopics().split(";");
+            String[] names = producer.getCodecs().split(";");
+            for (int i = 0; i < topics.length && i < names.length; i++) {
+                MessageCodec codec = codecsByName.get(names[i].trim());
+                if (codec == null) {
+                    log.warn("未知的编解码器: {}, topic: {} 使用JSON", names[i], topics[i]);
+                    continue;
+                }
+                topicCodecs.put(topics[i].trim(), codec);
+            }
+        }
+        log.info("可用的编解码器: {}, topic编解码器配置: {}", codecsByName.keySet(), topicCodecs.keySet());
+    }
+    
+    /**
+     * 获取topic配置的编解码器，不支持该消息类型时使用JSON
+     */
+    public MessageCodec forTopic(String topic, Object payload) {
+        MessageCodec codec = topicCodecs.get(topic);
+        if (codec == null || payload == null || !codec.supports(payload.getClass())) {
+            return jsonMessageCodec;
+        }
+        return codec;
+    }
+    
+    /**
+     * 根据内容类型获取解码器，没有内容类型的旧消息按JSON处理
+     */
+    public MessageCodec forContentType(String contentType) {
+        if (contentType == null) {
+            return jsonMessageCodec;
+        }
+        MessageCodec codec = codecsByContentType.get(contentType);
+        return codec != null ? codec : jsonMessageCodec;
+    }
+    
+    /**
+     * 按消息的contentType属性解码消息体
+     */
+    public <T> T decode(Message message, Class<T> type) {
+        return forContentType(message.getUserProperty(MessageCodec.CONTENT_TYPE_PROPERTY)).decode(message.getBody(), type);
+    }
+}
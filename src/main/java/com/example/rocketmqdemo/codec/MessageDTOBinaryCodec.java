@@ -0,0 +1,204 @@
+package com.example.rocketmqdemo.codec;
+
+import com.example.rocketmqdemo.model.MessageDTO;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.stereotype.Component;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+/**
+ * MessageDTO的紧凑二进制编解码器
+ * 格式：[版本 1字节][字段标志 1字节][id][type][content][businessId][createTime]
+ * UUID格式的ID写入16字节原始值，其余字符串写入长度加UTF-8字节，createTime写入12字节（UTC秒数加纳秒）
+ */
+@Component
+public class MessageDTOBinaryCodec implements MessageCodec {
+    
+    public static final String NAME = "binary";
+    
+    public static final String CONTENT_TYPE = "application/x-message-dto-v1";
+    
+    private static final byte VERSION = 1;
+    
+    // 字段标志位
+    private static final int ID_PRESENT = 1;
+    private static final int ID_UUID = 1 << 1;
+    private static final int TYPE_PRESENT = 1 << 2;
+    private static final int CONTENT_PRESENT = 1 << 3;
+    private static final int BUSINESS_ID_PRESENT = 1 << 4;
+    private static final int BUSINESS_ID_UUID = 1 << 5;
+    private static final int CREATE_TIME_PRESENT = 1 << 6;
+    
+    @Override
+    public String name() {
+        return NAME;
+    }
+    
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+    
+    @Override
+    public boolean supports(Class<?> type) {
+        return MessageDTO.class.equals(type);
+    }
+    
+    @Override
+    public byte[] encode(Object payload) {
+        if (!(payload instanceof MessageDTO)) {
+            throw new MessageConversionException("二进制编解码器只支持MessageDTO, 实际类型: " + payload.getClass().getName());
+        }
+        MessageDTO dto = (MessageDTO) payload;
+        UUID id = parseUuid(dto.getId());
+        UUID businessId = parseUuid(dto.getBusinessId());
+        byte[] idBytes = id == null ? utf8(dto.getId()) : null;
+        byte[] typeBytes = utf8(dto.getType());
+        byte[] contentBytes = utf8(dto.getContent());
+        byte[] businessIdBytes = businessId == null ? utf8(dto.getBusinessId()) : null;
+        
+        int flags = 0;
+        int size = 2;
+        if (dto.getId() != null) {
+            flags |= ID_PRESENT;
+            if (id != null) {
+                flags |= ID_UUID;
+                size += 16;
+            } else {
+                size += 4 + idBytes.length;
+            }
+        }
+        if (typeBytes != null) {
+            flags |= TYPE_PRESENT;
+            size += 4 + typeBytes.length;
+        }
+        if (contentBytes != null) {
+            flags |= CONTENT_PRESENT;
+            size += 4 + contentBytes.length;
+        }
+        if (dto.getBusinessId() != null) {
+            flags |= BUSINESS_ID_PRESENT;
+            if (businessId != null) {
+                flags |= BUSINESS_ID_UUID;
+                size += 16;
+            } else {
+                size += 4 + businessIdBytes.length;
+            }
+        }
+        if (dto.getCreateTime() != null) {
+            flags |= CREATE_TIME_PRESENT;
+            size += 12;
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(VERSION);
+        buffer.put((byte) flags);
+        if (id != null) {
+            putUuid(buffer, id);
+        } else if (idBytes != null) {
+            putBytes(buffer, idBytes);
+        }
+        if (typeBytes != null) {
+            putBytes(buffer, typeBytes);
+        }
+        if (contentBytes != null) {
+            putBytes(buffer, contentBytes);
+        }
+        if (businessId != null) {
+            putUuid(buffer, businessId);
+        } else if (businessIdBytes != null) {
+            putBytes(buffer, businessIdBytes);
+        }
+        if (dto.getCreateTime() != null) {
+            buffer.putLong(dto.getCreateTime().toEpochSecond(ZoneOffset.UTC));
+            buffer.putInt(dto.getCreateTime().getNano());
+        }
+        return buffer.array();
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] body, Class<T> type) {
+        if (!supports(type) && type != Object.class) {
+            throw new MessageConversionException("二进制编解码器只支持MessageDTO, 请求类型: " + type.getName());
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(body);
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new MessageConversionException("不支持的二进制消息版本: " + version);
+            }
+            int flags = buffer.get();
+            MessageDTO dto = new MessageDTO();
+            if ((flags & ID_PRESENT) != 0) {
+                dto.setId((flags & ID_UUID) != 0 ? getUuid(buffer) : getString(buffer));
+            }
+            if ((flags & TYPE_PRESENT) != 0) {
+                dto.setType(getString(buffer));
+            }
+            if ((flags & CONTENT_PRESENT) != 0) {
+                dto.setContent(getString(buffer));
+            }
+            if ((flags & BUSINESS_ID_PRESENT) != 0) {
+                dto.setBusinessId((flags & BUSINESS_ID_UUID) != 0 ? getUuid(buffer) : getString(buffer));
+            }
+            if ((flags & CREATE_TIME_PRESENT) != 0) {
+                long seconds = buffer.getLong();
+                int nanos = buffer.getInt();
+                dto.setCreateTime(LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+            }
+            return (T) dto;
+        } catch (BufferUnderflowException e) {
+            throw new MessageConversionException("二进制消息长度不完整", e);
+        }
+    }
+    
+    /**
+     * 只有规范格式的UUID才按16字节写入，保证解码后字符串完全一致
+     */
+    private UUID parseUuid(String value) {
+        if (value == null || value.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(value);
+            return uuid.toString().equals(value) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    private byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private void putUuid(ByteBuffer buffer, UUID uuid) {
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+    }
+    
+    private void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+    
+    private String getUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong()).toString();
+    }
+    
+    private String getString(ByteBuffer buffer) {
+        // 长度来自消息体，先校验再分配，避免损坏或恶意的长度导致超大数组分配
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new MessageConversionException("二进制消息字段长度非法: " + length + ", 剩余字节: " + buffer.remaining());
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
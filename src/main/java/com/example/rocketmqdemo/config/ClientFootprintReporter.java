@@ -0,0 +1,159 @@
+package com.example.rocketmqdemo.config;
+
+import com.example.rocketmqdemo.consumer.RocketMQConsumerContainer;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.impl.factory.MQClientInstance;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.common.ServiceState;
+import org.apache.rocketmq.common.protocol.route.BrokerData;
+import org.apache.rocketmq.common.protocol.route.TopicRouteData;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 统计每个集群的客户端实例、连接和线程占用
+ */
+@Component
+public class ClientFootprintReporter {
+    
+    // 生产者模板Bean名称的后缀，去掉后为集群类型
+    private static final String TEMPLATE_BEAN_SUFFIX = "RocketMQTemplate";
+    
+    @Autowired
+    private MQProperties mqProperties;
+    
+    @Autowired
+    private Map<String, RocketMQTemplate> clusterTemplates;
+    
+    @Autowired
+    private RocketMQConsumerContainer consumerContainer;
+    
+    /**
+     * 生成占用报告
+     * clusters中每个集群包含：运行中的生产者数、消费者数、客户端实例ID、连接数和消费线程数上限；
+     * 连接数按客户端实例路由表中的Broker地址数加一个NameServer连接估算；
+     * jvm中包含JVM存活线程数以及按线程名前缀（去掉序号）分组的线程数
+     */
+    public Map<String, Object> report() {
+        Map<String, ClusterFootprint> clusters = new TreeMap<>();
+        
+        for (Map.Entry<String, RocketMQTemplate> entry : clusterTemplates.entrySet()) {
+            DefaultMQProducer producer = entry.getValue().getProducer();
+            if (producer == null || producer.getDefaultMQProducerImpl().getServiceState() != ServiceState.RUNNING) {
+                continue;
+            }
+            String beanName = entry.getKey();
+            String cluster = beanName.endsWith(TEMPLATE_BEAN_SUFFIX)
+                    ? beanName.substring(0, beanName.length() - TEMPLATE_BEAN_SUFFIX.length()) : beanName;
+            ClusterFootprint footprint = clusters.computeIfAbsent(cluster, k -> new ClusterFootprint());
+            footprint.producers++;
+            footprint.addInstance(producer.getDefaultMQProducerImpl().getmQClientFactory());
+        }
+        
+        for (Map.Entry<String, DefaultMQPushConsumer> entry : consumerContainer.getConsumerInstances().entrySet()) {
+            DefaultMQPushConsumer consumer = entry.getValue();
+            if (consumer.getDefaultMQPushConsumerImpl().getServiceState() != ServiceState.RUNNING) {
+                continue;
+            }
+            // key格式为 集群_消费组_topic
+            String cluster = entry.getKey().substring(0, entry.getKey().indexOf('_'));
+            ClusterFootprint footprint = clusters.computeIfAbsent(cluster, k -> new ClusterFootprint());
+            footprint.consumers++;
+            footprint.consumeThreadsMax += consumer.getConsumeThreadMax();
+            footprint.addInstance(consumer.getDefaultMQPushConsumerImpl().getmQClientFactory());
+        }
+        
+        Map<String, Object> clusterReport = new TreeMap<>();
+        int totalInstances = 0;
+        for (Map.Entry<String, ClusterFootprint> entry : clusters.entrySet()) {
+            clusterReport.put(entry.getKey(), entry.getValue().toMap());
+            totalInstances += entry.getValue().instances.size();
+        }
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("sharedClientInstance", mqProperties.isSharedClientInstance());
+        result.put("clientInstances", totalInstances);
+        result.put("clusters", clusterReport);
+        result.put("jvm", jvmThreads());
+        return result;
+    }
+    
+    /**
+     * JVM线程统计
+     */
+    private Map<String, Object> jvmThreads() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Map<String, Integer> threadsByPrefix = new TreeMap<>();
+        for (ThreadInfo info : threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds())) {
+            if (info == null) {
+                continue;
+            }
+            // 去掉线程名末尾的序号，同一线程池的线程归为一组
+            String prefix = info.getThreadName().replaceAll("[-_#]?\\d+$", "");
+            threadsByPrefix.merge(prefix, 1, Integer::sum);
+        }
+        Map<String, Object> jvm = new HashMap<>();
+        jvm.put("liveThreads", threadMXBean.getThreadCount());
+        jvm.put("daemonThreads", threadMXBean.getDaemonThreadCount());
+        jvm.put("peakThreads", threadMXBean.getPeakThreadCount());
+        jvm.put("threadsByPrefix", threadsByPrefix);
+        return jvm;
+    }
+    
+    /**
+     * 单个集群的占用统计
+     */
+    private static class ClusterFootprint {
+        
+        private int producers;
+        
+        private int consumers;
+        
+        private int consumeThreadsMax;
+        
+        private final Map<MQClientInstance, Boolean> instances = new IdentityHashMap<>();
+        
+        void addInstance(MQClientInstance instance) {
+            if (instance != null) {
+                instances.put(instance, Boolean.TRUE);
+            }
+        }
+        
+        Map<String, Object> toMap() {
+            Set<String> clientIds = new HashSet<>();
+            int channels = 0;
+            for (MQClientInstance instance : instances.keySet()) {
+                clientIds.add(instance.getClientId());
+                Set<String> brokerAddrs = new HashSet<>();
+                for (TopicRouteData route : instance.getTopicRouteTable().values()) {
+                    if (route.getBrokerDatas() == null) {
+                        continue;
+                    }
+                    for (BrokerData brokerData : route.getBrokerDatas()) {
+                        brokerAddrs.addAll(brokerData.getBrokerAddrs().values());
+                    }
+                }
+                channels += brokerAddrs.size() + 1;
+            }
+            Map<String, Object> map = new HashMap<>();
+            map.put("producers", producers);
+            map.put("consumers", consumers);
+            map.put("clientInstances", instances.size());
+            map.put("clientIds", clientIds);
+            map.put("channels", channels);
+            map.put("consumeThreadsMax", consumeThreadsMax);
+            return map;
+        }
+    }
+}
@@ -1,17 +1,36 @@
 package com.example.rocketmqdemo.config;
 
-import com.example.rocketmqdemo.consumer.DemoMessageConsumer;
+import com.example.rocketmqdemo.consumer.ConsumerListenerRegistry;
 import com.example.rocketmqdemo.consumer.RocketMQConsumerContainer;
+import com.example.rocketmqdemo.model.ConsumerSwitchResult;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Component
 public class ConsumerSwitchMonitor {
+    
+    // 开关变更和集群切换日志，异步队列满时也不丢弃
+    private static final Logger switchLog = LoggerFactory.getLogger(HotPathLogSampler.SWITCH_LOGGER);
 
     @Autowired
     private MQProperties mqProperties;
@@ -20,17 +39,41 @@ public class ConsumerSwitchMonitor {
     private RocketMQConsumerContainer consumerContainer;
     
     @Autowired
-    private DemoMessageConsumer demoMessageConsumer;
+    private ConsumerListenerRegistry listenerRegistry;
+    
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
     
     // 启用/禁用监控的标志
     private boolean monitorEnabled;
     
+    // 处理开关变更通知的线程，切换按通知顺序串行执行，不占用Redis监听线程
+    private ExecutorService switchEventExecutor;
+    
+    // 定时对账时并行执行各topic切换的线程池
+    private ExecutorService switchExecutor;
+    
+    // 定时对账已提交、尚未完成切换的消费组:topic，切换未完成前不重复提交
+    private final Set<String> switchesInFlight = ConcurrentHashMap.newKeySet();
+    
+    // 本节点消费的消费组、topic及其业务集群，启动时解析一次
+    private final List<SwitchTarget> switchTargets = new ArrayList<>();
+    
     @PostConstruct
     public void init() {
         // 从配置中获取监控启用状态
         this.monitorEnabled = mqProperties.getMonitor() != null ? 
                 mqProperties.getMonitor().isEnabled() : true;
         
+        parseSwitchTargets();
+        int switchThreads = mqProperties.getMonitor() != null ? mqProperties.getMonitor().getSwitchThreads() : 8;
+        AtomicInteger threadIndex = new AtomicInteger();
+        switchExecutor = Executors.newFixedThreadPool(Math.max(1, switchThreads), r -> {
+            Thread thread = new Thread(r, "ConsumerSwitchThread_" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        
         log.info("消费者开关监控服务已启动, 监控状态: {}, 检查间隔: {}ms", 
                 monitorEnabled, 
                 mqProperties.getMonitor() != null ? mqProperties.getMonitor().getCheckIntervalMs() : 30000);
@@ -40,38 +83,164 @@ public class ConsumerSwitchMonitor {
             log.info("执行启动时初始检查");
             triggerManualCheck();
         }
+        
+        // 订阅开关变更通知，收到后立即检查对应topic，定时检查作为兜底对账
+        if (mqProperties.getMonitor() == null || mqProperties.getMonitor().isPushEnabled()) {
+            switchEventExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "ConsumerSwitchEventThread");
+                thread.setDaemon(true);
+                return thread;
+            });
+            redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+                String event = new String(message.getBody(), StandardCharsets.UTF_8);
+                switchEventExecutor.execute(() -> onSwitchEvent(event));
+            }, new ChannelTopic(RocketMQConsumerContainer.CONSUMER_SWITCH_CHANNEL));
+            log.info("已订阅消费者开关变更通知, 频道: {}", RocketMQConsumerContainer.CONSUMER_SWITCH_CHANNEL);
+        }
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        if (switchEventExecutor != null) {
+            switchEventExecutor.shutdown();
+        }
+        switchExecutor.shutdown();
+    }
+    
+    /**
+     * 解析消费者配置中的topic、业务集群和消费组
+     */
+    private void parseSwitchTargets() {
+        MQProperties.Consumer consumer = mqProperties.getConsumer();
+        if (consumer == null || consumer.getTopics() == null) {
+            return;
+        }
+        String[] topics = consumer.getTopics().split(";");
+        String[] topicClusters = consumer.getTopicClusters() != null ? consumer.getTopicClusters().split(";") : new String[0];
+        String[] consumerGroups = consumer.getGroup() != null ? consumer.getGroup().split(";") : new String[0];
+        for (int i = 0; i < topics.length; i++) {
+            String clusterType = i < topicClusters.length ? topicClusters[i] : "origin";
+            String consumerGroup = i < consumerGroups.length ? consumerGroups[i] : "defaultConsumerGroup";
+            switchTargets.add(new SwitchTarget(consumerGroup, topics[i], clusterType));
+        }
+    }
+    
+    /**
+     * 处理开关变更通知，消息格式为 消费组:topic:发布时间戳
+     */
+    private void onSwitchEvent(String event) {
+        if (!monitorEnabled || !mqProperties.getConsumer().isEnable()) {
+            return;
+        }
+        String[] parts = event.split(":");
+        if (parts.length < 2) {
+            log.warn("无法解析消费者开关变更通知: {}", event);
+            return;
+        }
+        String consumerGroup = parts[0];
+        String topic = parts[1];
+        long delayMs = -1;
+        if (parts.length > 2) {
+            try {
+                delayMs = System.currentTimeMillis() - Long.parseLong(parts[2]);
+            } catch (NumberFormatException e) {
+                log.debug("消费者开关变更通知的发布时间戳无效: {}", event);
+            }
+        }
+        
+        for (SwitchTarget target : switchTargets) {
+            if (target.topic.equals(topic) && target.consumerGroup.equals(consumerGroup)) {
+                switchLog.info("收到消费者开关变更通知, consumerGroup: {}, topic: {}, 通知延迟: {}ms", consumerGroup, topic, delayMs);
+                try {
+                    consumerContainer.checkAndSwitchConsumer(consumerGroup, topic, target.clusterType,
+                            listenerRegistry.getListener(consumerGroup, topic));
+                } catch (Exception e) {
+                    log.error("处理消费者开关变更通知失败, consumerGroup: {}, topic: {}", consumerGroup, topic, e);
+                }
+                return;
+            }
+        }
+        log.debug("本节点未消费该topic，忽略开关变更通知, consumerGroup: {}, topic: {}", consumerGroup, topic);
     }
     
     /**
      * 定期检查消费者开关状态，使用配置的时间间隔
+     * 开启推送模式时开关变更由通知立即处理，定时检查作为丢失通知时的兜底对账
      */
     @Scheduled(fixedRateString = "${rocketmq.monitor.check-interval-ms:30000}")
     public void monitorConsumerSwitches() {
-        if (!monitorEnabled || !mqProperties.getConsumer().isEnable()) {
-            return;
+        // 切换可能持续到就绪超时加重叠和排空时间，定时任务只提交切换不等待，避免占用调度线程影响其他定时任务
+        checkConsumerSwitches(false);
+    }
+    
+    /**
+     * 检查所有topic的消费者开关状态并执行切换
+     * 一次MGET读取所有开关，需要切换的topic在线程池中并行切换，某个集群切换慢不影响其他topic
+     * @param waitForResults 是否等待切换完成，不等待时切换结果只记录日志
+     * @return 本次发生的切换结果，不等待时为空
+     */
+    private List<ConsumerSwitchResult> checkConsumerSwitches(boolean waitForResults) {
+        List<ConsumerSwitchResult> switchResults = new ArrayList<>();
+        if (!monitorEnabled || !mqProperties.getConsumer().isEnable() || switchTargets.isEmpty()) {
+            return switchResults;
         }
         
         try {
             log.debug("开始定期检查消费者开关状态");
+            long startTime = System.currentTimeMillis();
             
-            // 获取所有配置项
-            String[] topics = mqProperties.getConsumer().getTopics().split(";");
-            String[] topicClusters = mqProperties.getConsumer().getTopicClusters().split(";");
-            String[] consumerGroups = mqProperties.getConsumer().getGroup().split(";");
+            List<String> consumerGroups = new ArrayList<>(switchTargets.size());
+            List<String> topics = new ArrayList<>(switchTargets.size());
+            for (SwitchTarget target : switchTargets) {
+                consumerGroups.add(target.consumerGroup);
+                topics.add(target.topic);
+            }
+            List<Boolean> switches = consumerContainer.getConsumerSwitches(consumerGroups, topics);
             
-            for (int i = 0; i < topics.length; i++) {
-                String topic = topics[i];
-                String clusterType = i < topicClusters.length ? topicClusters[i] : "origin";
-                String consumerGroup = i < consumerGroups.length ? consumerGroups[i] : "defaultConsumerGroup";
+            List<CompletableFuture<ConsumerSwitchResult>> futures = new ArrayList<>();
+            for (int i = 0; i < switchTargets.size(); i++) {
+                SwitchTarget target = switchTargets.get(i);
+                String targetCluster = switches.get(i) ? target.clusterType : "origin";
+                String currentCluster = consumerContainer.getCurrentCluster(target.consumerGroup, target.topic);
+                String targetKey = target.consumerGroup + ":" + target.topic;
                 
-                // 检查并切换消费者
-                consumerContainer.checkAndSwitchConsumer(consumerGroup, topic, clusterType, demoMessageConsumer);
+                // 如果目标集群与当前集群不同，则进行切换；上一次提交的切换还未完成时跳过
+                if (!targetCluster.equals(currentCluster) && switchesInFlight.add(targetKey)) {
+                    switchLog.info("检测到开关状态变化，准备切换消费者, consumerGroup: {}, topic: {}, 当前: {}, 目标: {}", 
+                            target.consumerGroup, target.topic, currentCluster, targetCluster);
+                    CompletableFuture<ConsumerSwitchResult> future = CompletableFuture.supplyAsync(
+                            () -> consumerContainer.switchConsumerCluster(target.consumerGroup, target.topic, targetCluster,
+                                    listenerRegistry.getListener(target.consumerGroup, target.topic)), switchExecutor);
+                    future.whenComplete((result, error) -> {
+                        switchesInFlight.remove(targetKey);
+                        if (error != null) {
+                            log.error("切换消费者时发生错误, consumerGroup: {}, topic: {}", 
+                                    target.consumerGroup, target.topic, error);
+                        }
+                    });
+                    futures.add(future);
+                }
+            }
+            
+            if (waitForResults) {
+                for (CompletableFuture<ConsumerSwitchResult> future : futures) {
+                    try {
+                        switchResults.add(future.get());
+                    } catch (ExecutionException e) {
+                        // 错误已在whenComplete中记录
+                    }
+                }
             }
             
-            log.debug("定期检查消费者开关状态完成");
+            log.debug("定期检查消费者开关状态完成, topic数: {}, 切换数: {}, 耗时: {}ms", 
+                    switchTargets.size(), futures.size(), System.currentTimeMillis() - startTime);
         } catch (Exception e) {
             log.error("监控消费者开关状态时发生错误", e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
         }
+        return switchResults;
     }
     
     /**
@@ -99,10 +268,11 @@ public class ConsumerSwitchMonitor {
     
     /**
      * 手动触发一次检查
+     * @return 本次发生的切换结果
      */
-    public void triggerManualCheck() {
+    public List<ConsumerSwitchResult> triggerManualCheck() {
         log.info("手动触发消费者开关检查");
-        monitorConsumerSwitches();
+        return checkConsumerSwitches(true);
     }
     
     /**
@@ -112,4 +282,22 @@ public class ConsumerSwitchMonitor {
         return mqProperties.getMonitor() != null ? 
                 mqProperties.getMonitor().getCheckIntervalMs() : 30000;
     }
+    
+    /**
+     * 需要检查开关的消费组和topic
+     */
+    private static final class SwitchTarget {
+        
+        private final String consumerGroup;
+        
+        private final String topic;
+        
+        private final String clusterType;
+        
+        private SwitchTarget(String consumerGroup, String topic, String clusterType) {
+            this.consumerGroup = consumerGroup;
+            this.topic = topic;
+            this.clusterType = clusterType;
+        }
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,205 @@
+package com.example.rocketmqdemo.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 发送和消费路径上的日志采样，按类别每N条输出一条，并限制每秒最多输出的条数
+ * 只有采样命中时调用方才拼接日志参数，未命中时不产生额外分配；消息体超过长度上限时截断。
+ * 错误日志和开关切换日志不经过采样，始终完整输出
+ */
+@Slf4j
+@Component
+public class HotPathLogSampler {
+    
+    /**
+     * 生产者每次发送
+     */
+    public static final String PRODUCER_SEND = "producer.send";
+    
+    /**
+     * 消费者每条消息
+     */
+    public static final String CONSUMER_RECEIVE = "consumer.receive";
+    
+    /**
+     * 消费幂等过滤的重复消息
+     */
+    public static final String CONSUMER_DUPLICATE = "consumer.duplicate";
+    
+    /**
+     * 开关变更和集群切换日志的logger名称，logback-spring.xml中输出到不丢弃日志的异步队列
+     */
+    public static final String SWITCH_LOGGER = "com.example.rocketmqdemo.switch";
+    
+    @Autowired
+    private MQProperties mqProperties;
+    
+    private final ConcurrentHashMap<String, Category> categories = new ConcurrentHashMap<>();
+    
+    private volatile boolean enabled;
+    
+    private volatile int maxBodyLength;
+    
+    @PostConstruct
+    public void init() {
+        MQProperties.HotPathLog config = mqProperties.getHotPathLog();
+        enabled = config.isEnabled();
+        maxBodyLength = config.getMaxBodyLength();
+        
+        List<String> names = split(config.getCategories());
+        List<String> sampleRates = split(config.getSampleRates());
+        List<String> maxPerSeconds = split(config.getMaxPerSecond());
+        for (int i = 0; i < names.size(); i++) {
+            int sampleRate = i < sampleRates.size() ? Integer.parseInt(sampleRates.get(i)) : 1;
+            int maxPerSecond = i < maxPerSeconds.size() ? Integer.parseInt(maxPerSeconds.get(i)) : 0;
+            categories.put(names.get(i), new Category(sampleRate, maxPerSecond));
+        }
+        log.info("热点日志采样, 启用: {}, 消息体长度上限: {}, 类别: {}", enabled, maxBodyLength, getStatus().get("categories"));
+    }
+    
+    /**
+     * 判断本次是否输出日志，未配置的类别全部输出
+     * @param category 日志类别
+     * @return true表示输出
+     */
+    public boolean sample(String category) {
+        if (!enabled) {
+            return true;
+        }
+        Category state = categories.get(category);
+        return state == null || state.sample();
+    }
+    
+    /**
+     * 截断过长的消息体，只在采样命中后调用
+     */
+    public String truncate(Object body) {
+        String text = String.valueOf(body);
+        int limit = maxBodyLength;
+        if (!enabled || limit <= 0 || text.length() <= limit) {
+            return text;
+        }
+        return text.substring(0, limit) + "...(" + text.length() + " chars)";
+    }
+    
+    /**
+     * 运行时调整单个类别的采样参数
+     * @param category 日志类别，不存在时新建
+     * @param sampleRate 每N条输出一条，1为全部输出，0为不输出；null保持不变
+     * @param maxPerSecond 每秒最多输出条数，0为不限制；null保持不变
+     */
+    public void update(String category, Integer sampleRate, Integer maxPerSecond) {
+        if ((sampleRate != null && sampleRate < 0) || (maxPerSecond != null && maxPerSecond < 0)) {
+            throw new IllegalArgumentException("采样参数不能为负数");
+        }
+        Category state = categories.computeIfAbsent(category, key -> new Category(1, 0));
+        if (sampleRate != null) {
+            state.sampleRate = sampleRate;
+        }
+        if (maxPerSecond != null) {
+            state.maxPerSecond = maxPerSecond;
+        }
+        log.info("更新热点日志采样参数, 类别: {}, 采样率: 1/{}, 每秒上限: {}", category, state.sampleRate, state.maxPerSecond);
+    }
+    
+    /**
+     * 运行时调整全局开关和消息体长度上限
+     * @param enabled 是否启用采样，关闭时全部输出且不截断；null保持不变
+     * @param maxBodyLength 消息体长度上限，0为不截断；null保持不变
+     */
+    public void updateGlobal(Boolean enabled, Integer maxBodyLength) {
+        if (maxBodyLength != null && maxBodyLength < 0) {
+            throw new IllegalArgumentException("消息体长度上限不能为负数");
+        }
+        if (enabled != null) {
+            this.enabled = enabled;
+        }
+        if (maxBodyLength != null) {
+            this.maxBodyLength = maxBodyLength;
+        }
+        log.info("更新热点日志采样, 启用: {}, 消息体长度上限: {}", this.enabled, this.maxBodyLength);
+    }
+    
+    /**
+     * 采样配置和各类别的输出统计
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> categoryStatus = new LinkedHashMap<>();
+        for (Map.Entry<String, Category> entry : categories.entrySet()) {
+            Category state = entry.getValue();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("sampleRate", state.sampleRate);
+            item.put("maxPerSecond", state.maxPerSecond);
+            item.put("total", state.total.get());
+            item.put("logged", state.logged.get());
+            item.put("suppressed", state.total.get() - state.logged.get());
+            categoryStatus.put(entry.getKey(), item);
+        }
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("maxBodyLength", maxBodyLength);
+        status.put("categories", categoryStatus);
+        return status;
+    }
+    
+    private List<String> split(String value) {
+        return value == null || value.trim().isEmpty() ? Collections.emptyList() : Arrays.asList(value.trim().split("\\s*;\\s*"));
+    }
+    
+    /**
+     * 单个类别的采样状态
+     */
+    private static class Category {
+        
+        private volatile int sampleRate;
+        
+        private volatile int maxPerSecond;
+        
+        private final AtomicLong total = new AtomicLong();
+        
+        private final AtomicLong logged = new AtomicLong();
+        
+        // 当前限流窗口（秒）及窗口内已输出条数
+        private final AtomicLong windowSecond = new AtomicLong();
+        
+        private final AtomicInteger windowCount = new AtomicInteger();
+        
+        Category(int sampleRate, int maxPerSecond) {
+            this.sampleRate = sampleRate;
+            this.maxPerSecond = maxPerSecond;
+        }
+        
+        boolean sample() {
+            long count = total.incrementAndGet();
+            int rate = sampleRate;
+            if (rate <= 0 || count % rate != 0) {
+                return false;
+            }
+            int limit = maxPerSecond;
+            if (limit > 0) {
+                long second = System.currentTimeMillis() / 1000;
+                long current = windowSecond.get();
+                if (current != second && windowSecond.compareAndSet(current, second)) {
+                    windowCount.set(0);
+                }
+                if (windowCount.incrementAndGet() > limit) {
+                    return false;
+                }
+            }
+            logged.incrementAndGet();
+            return true;
+        }
+    }
+}
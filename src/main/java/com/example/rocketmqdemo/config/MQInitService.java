@@ -1,16 +1,29 @@
 package com.example.rocketmqdemo.config;
 
-import com.example.rocketmqdemo.consumer.DemoMessageConsumer;
+import com.example.rocketmqdemo.consumer.ConsumerListenerRegistry;
 import com.example.rocketmqdemo.consumer.RocketMQConsumerContainer;
+import com.example.rocketmqdemo.model.StartupReport;
 import com.example.rocketmqdemo.producer.RocketMQProducer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 @Slf4j
 @Component
 public class MQInitService implements ApplicationRunner, ApplicationListener<ContextClosedEvent> {
@@ -22,26 +35,75 @@ public class MQInitService implements ApplicationRunner, ApplicationListener<Con
     private RocketMQConsumerContainer consumerContainer;
     
     @Autowired
-    private DemoMessageConsumer demoMessageConsumer;
+    private ConsumerListenerRegistry listenerRegistry;
     
     @Autowired
     private RocketMQProducer rocketMQProducer;
+    
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
 
+    // 最近一次启动的耗时统计
+    private volatile StartupReport startupReport;
+
+    /**
+     * 初始化生产者和消费者，所有消费者启动完成后才返回，应用在此之后才会就绪
+     * 有消费者未能启动时应用保持拒绝流量状态，见{@link #onReadinessChange(AvailabilityChangeEvent)}
+     */
     @Override
     public void run(ApplicationArguments args) {
+        long startTime = System.currentTimeMillis();
+        StartupReport report = StartupReport.builder()
+                .topicCostMs(new LinkedHashMap<>())
+                .failedTopics(new ArrayList<>())
+                .allConsumersRunning(true)
+                .build();
         try {
             if (mqProperties.getProducer().isEnable()) {
+                long producerStart = System.currentTimeMillis();
                 initProducers();
+                report.setProducerCostMs(System.currentTimeMillis() - producerStart);
             }
             
             if (mqProperties.getConsumer().isEnable()) {
-                initConsumers();
+                initConsumers(report);
             }
         } catch (Exception e) {
             log.error("初始化RocketMQ组件时发生错误", e);
+            report.setAllConsumersRunning(false);
+        }
+        report.setTotalCostMs(System.currentTimeMillis() - startTime);
+        startupReport = report;
+        if (startupReport.isAllConsumersRunning()) {
+            log.info("RocketMQ组件初始化完成, 总耗时: {}ms, 各topic耗时: {}", 
+                    startupReport.getTotalCostMs(), startupReport.getTopicCostMs());
+        } else {
+            log.error("RocketMQ组件初始化完成，部分消费者未能启动: {}, 总耗时: {}ms", 
+                    startupReport.getFailedTopics(), startupReport.getTotalCostMs());
+            AvailabilityChangeEvent.publish(applicationEventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        }
+    }
+    
+    /**
+     * Spring Boot在所有ApplicationRunner执行完后发布ACCEPTING_TRAFFIC，
+     * 启动时有消费者未能启动则重新发布REFUSING_TRAFFIC，避免就绪探针把该实例当作可用
+     */
+    @EventListener
+    public void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        StartupReport report = startupReport;
+        if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC && report != null && !report.isAllConsumersRunning()) {
+            log.error("部分消费者未能启动，应用保持拒绝流量状态: {}", report.getFailedTopics());
+            AvailabilityChangeEvent.publish(applicationEventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
         }
     }
     
+    /**
+     * 获取启动耗时统计
+     */
+    public StartupReport getStartupReport() {
+        return startupReport;
+    }
+    
     /**
      * 应用关闭时执行清理操作
      */
@@ -71,9 +133,16 @@ public class MQInitService implements ApplicationRunner, ApplicationListener<Con
     }
     
     /**
-     * 初始化消费者
+     * 初始化消费者，并发度大于1时并行初始化
      */
-    private void initConsumers() {
+    private void initConsumers(StartupReport report) {
+        int parallelism = mqProperties.getConsumer().getInitParallelism();
+        report.setParallelism(Math.max(1, parallelism));
+        if (parallelism > 1) {
+            initConsumersInParallel(parallelism, report);
+            return;
+        }
+        
         try {
             // 获取所有配置项
             String[] topics = mqProperties.getConsumer().getTopics().split(";");
@@ -81,33 +150,110 @@ public class MQInitService implements ApplicationRunner, ApplicationListener<Con
             String[] consumerGroups = mqProperties.getConsumer().getGroup().split(";");
             String[] subExpressions = mqProperties.getConsumer().getInitSubExps().split(";");
             
-            // 先验证demoMessageConsumer是否为空
-            if (demoMessageConsumer == null) {
-                log.error("消息监听器为空，无法初始化任何消费者");
-                return;
-            }
-            
             for (int i = 0; i < topics.length; i++) {
+                String topic = topics[i];
+                String consumerGroup = i < consumerGroups.length ? consumerGroups[i] : "defaultConsumerGroup";
+                long topicStart = System.currentTimeMillis();
+                boolean running = false;
                 try {
-                    String topic = topics[i];
                     String clusterType = i < topicClusters.length ? topicClusters[i] : "origin";
-                    String consumerGroup = i < consumerGroups.length ? consumerGroups[i] : "defaultConsumerGroup";
                     String subExpression = i < subExpressions.length ? subExpressions[i] : "*";
                     
                     // 初始化消费者开关（只在开关不存在时设置默认值）
                     consumerContainer.initConsumerSwitch(consumerGroup, topic, false);
                     
-                    // 订阅主题并消费消息
-                    consumerContainer.subscribeAndConsume(consumerGroup, topic, subExpression, demoMessageConsumer, clusterType);
+                    // 订阅主题并使用配置的监听器消费消息
+                    consumerContainer.subscribeAndConsume(consumerGroup, topic, subExpression,
+                            listenerRegistry.getListener(consumerGroup, topic), clusterType);
+                    running = consumerContainer.isConsumerRunning(consumerGroup, topic);
                     
                     log.info("初始化消费者 - topic: {}, clusterType: {}, consumerGroup: {}", topic, clusterType, consumerGroup);
                 } catch (Exception e) {
                     log.error("初始化单个消费者时发生错误, index: " + i, e);
                     // 继续处理下一个消费者
                 }
+                recordTopicStartup(report, consumerGroup, topic, running, System.currentTimeMillis() - topicStart);
             }
         } catch (Exception e) {
             log.error("初始化所有消费者时发生错误", e);
+            report.setAllConsumersRunning(false);
+        }
+    }
+    
+    /**
+     * 并行初始化消费者：一次MGET读取并初始化所有开关，再在线程池中并发启动各topic的消费者，等待全部完成后返回
+     */
+    private void initConsumersInParallel(int parallelism, StartupReport report) {
+        String[] topics = mqProperties.getConsumer().getTopics().split(";");
+        String[] topicClusters = mqProperties.getConsumer().getTopicClusters().split(";");
+        String[] consumerGroupArray = mqProperties.getConsumer().getGroup().split(";");
+        String[] subExpressions = mqProperties.getConsumer().getInitSubExps().split(";");
+        List<String> consumerGroups = new ArrayList<>(topics.length);
+        for (int i = 0; i < topics.length; i++) {
+            consumerGroups.add(i < consumerGroupArray.length ? consumerGroupArray[i] : "defaultConsumerGroup");
+        }
+        
+        // 一次读取所有开关，不存在的写入默认值（默认关闭，使用原集群）；批量读取失败时退回到每个topic分别读写开关
+        long prefetchStart = System.currentTimeMillis();
+        List<Boolean> switches = null;
+        try {
+            switches = consumerContainer.initConsumerSwitches(consumerGroups, Arrays.asList(topics), false);
+        } catch (Exception e) {
+            log.error("批量读取消费者开关失败，改为每个topic分别读取, 错误: {}", e.getMessage(), e);
+        }
+        report.setSwitchPrefetchCostMs(System.currentTimeMillis() - prefetchStart);
+        
+        ExecutorService initExecutor = Executors.newFixedThreadPool(Math.min(parallelism, topics.length));
+        try {
+            List<Future<?>> futures = new ArrayList<>(topics.length);
+            for (int i = 0; i < topics.length; i++) {
+                String topic = topics[i];
+                String consumerGroup = consumerGroups.get(i);
+                String clusterType = i < topicClusters.length ? topicClusters[i] : "origin";
+                String subExpression = i < subExpressions.length ? subExpressions[i] : "*";
+                Boolean useBusinessCluster = switches != null ? switches.get(i) : null;
+                futures.add(initExecutor.submit(() -> {
+                    long topicStart = System.currentTimeMillis();
+                    boolean running = false;
+                    try {
+                        if (useBusinessCluster == null) {
+                            consumerContainer.initConsumerSwitch(consumerGroup, topic, false);
+                        }
+                        running = consumerContainer.subscribeAndConsume(consumerGroup, topic, subExpression,
+                                listenerRegistry.getListener(consumerGroup, topic), clusterType, useBusinessCluster);
+                        log.info("初始化消费者 - topic: {}, clusterType: {}, consumerGroup: {}, 运行中: {}", 
+                                topic, clusterType, consumerGroup, running);
+                    } catch (Exception e) {
+                        log.error("初始化单个消费者时发生错误, topic: " + topic, e);
+                    }
+                    recordTopicStartup(report, consumerGroup, topic, running, System.currentTimeMillis() - topicStart);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            log.error("并行初始化消费者时发生错误", e);
+            report.setAllConsumersRunning(false);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            initExecutor.shutdown();
+        }
+    }
+    
+    /**
+     * 记录单个topic的启动耗时和结果，并行初始化时由多个线程调用
+     */
+    private void recordTopicStartup(StartupReport report, String consumerGroup, String topic, boolean running, long costMs) {
+        String key = consumerGroup + ":" + topic;
+        synchronized (report) {
+            report.getTopicCostMs().put(key, costMs);
+            if (!running) {
+                report.getFailedTopics().add(key);
+                report.setAllConsumersRunning(false);
+            }
         }
     }
 } 
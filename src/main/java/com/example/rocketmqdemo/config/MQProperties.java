@@ -23,9 +23,36 @@ public class MQProperties {
         return nameServer;
     }
     
+    // 按集群类型获取NameServer地址，未知集群返回null
+    public String getClusterAddress(String cluster) {
+        switch (cluster) {
+            case "origin":
+                return nameServer;
+            case "product":
+                return productAddress;
+            case "asset":
+                return assetAddress;
+            case "operation":
+                return operationAddress;
+            case "risk":
+                return riskAddress;
+            case "base":
+                return baseAddress;
+            default:
+                return null;
+        }
+    }
+    
+    // 同一集群的生产者和消费者共用一个客户端实例（Netty连接、重平衡和心跳线程）
+    private boolean sharedClientInstance = false;
+    
     private Producer producer;
     private Consumer consumer;
     private Monitor monitor;
+    private Journal journal = new Journal();
+    private Dedup dedup = new Dedup();
+    private HotPathLog hotPathLog = new HotPathLog();
+    private Quarantine quarantine = new Quarantine();
     
     @Data
     public static class Producer {
@@ -39,6 +66,36 @@ public class MQProperties {
         private String msgTypes;
         private String checkImmunityTimeInSeconds;
         
+        // 每个Topic的双写确认策略：PRIMARY_ONLY、BOTH、FIRST_SUCCESS
+        private String ackPolicies;
+        
+        // 按tag或消息类型覆盖topic默认集群的路由规则：topic:tag=cluster、topic#type=cluster
+        private String routeRules;
+        
+        // 每个Topic的消息编解码器：json、binary
+        private String codecs;
+        
+        // 每个Topic的压缩算法：none、lz4、deflate
+        private String compressions;
+        
+        // 消息体超过该长度（字节）才压缩
+        private int compressThresholdBytes = 2048;
+        
+        // 解压时允许的最大原始长度（字节），默认与Broker的maxMessageSize一致，超过则拒绝解压
+        private int maxDecompressedBytes = 4 * 1024 * 1024;
+        
+        // 生产者开关本地缓存的兜底刷新间隔（毫秒），正常情况下依赖Redis发布订阅推送
+        private long switchRefreshIntervalMs = 5000;
+        
+        // 异步发送时每个集群允许的最大在途消息数
+        private int maxInFlightPerCluster = 1000;
+        
+        // 同步发送时在途窗口已满获取许可的最长等待时间（毫秒），超时则拒绝发送；异步发送不等待
+        private long inFlightAcquireTimeoutMs = 100;
+        
+        // 异步发送接口允许的最大在途请求数，超过时返回429
+        private int maxAsyncSendRequests = 2000;
+        
         // 支持连字符格式
         public void setTopicClusters(String topicClusters) {
             this.topicClusters = topicClusters;
@@ -69,6 +126,30 @@ public class MQProperties {
         private String maxReconsumeTimes;
         private String consumeThreadNums;
         private String consumeTimeouts;
+        private String consumeBatchMaxSizes;
+        private String pullBatchSizes;
+        private String pullThresholdsForQueue;
+        
+        // 消费线程数上限，运行时调整的消费线程数不能超过该值
+        private int consumeThreadMax = 64;
+        
+        // 顺序消息topic按分片键并行消费的线程数，所有顺序消息topic共享
+        private int orderlyShardThreads = 16;
+        
+        // 启动时并行初始化消费者的并发度，为1时逐个topic串行初始化
+        private int initParallelism = 1;
+        
+        // 消费者集群切换方式：BREAK_BEFORE_MAKE（先停后启）、MAKE_BEFORE_BREAK（先启后停）
+        private String switchMode = "BREAK_BEFORE_MAKE";
+        
+        // 切换时等待新消费者分配到队列并开始拉取的超时时间（毫秒）
+        private long switchReadyTimeoutMs = 30000;
+        
+        // 先启后停时新旧消费者同时消费的时长（毫秒）
+        private long switchOverlapMs = 3000;
+        
+        // 先启后停时等待旧消费者消费完本地缓存消息的超时时间（毫秒）
+        private long switchDrainTimeoutMs = 10000;
         
         // 支持连字符格式
         public void setTopicClusters(String topicClusters) {
@@ -109,6 +190,9 @@ public class MQProperties {
         // 是否启用消费者开关监控
         private boolean enabled = true;
         
+        // 是否订阅开关变更通知，变更后立即切换，定时检查作为兜底对账
+        private boolean pushEnabled = true;
+        
         // 监控检查间隔时间（毫秒），默认30秒
         private long checkIntervalMs = 30000;
         
@@ -117,5 +201,92 @@ public class MQProperties {
         
         // 监控检查的初始延迟时间（毫秒），默认10秒
         private long initialDelayMs = 10000;
+        
+        // 定时对账时并行切换消费者的线程数
+        private int switchThreads = 8;
+        
+        // 消费堆积查询结果的缓存时间（毫秒），避免看板频繁访问NameServer和Broker
+        private long lagCacheTtlMs = 5000;
+        
+        // 消费堆积查询的超时时间（毫秒）
+        private long lagQueryTimeoutMs = 5000;
+    }
+    
+    @Data
+    public static class Journal {
+        // 是否启用发送失败日志
+        private boolean enabled = true;
+        
+        // 日志文件目录
+        private String path = "./data/journal";
+        
+        // 日志文件大小（MB）
+        private int fileSizeMb = 64;
+        
+        // 每批回放的最大消息数
+        private int replayBatchSize = 100;
+        
+        // 回放检查间隔（毫秒）
+        private long replayIntervalMs = 1000;
+        
+        // 回放失败后的最大退避时间（毫秒）
+        private long maxBackoffMs = 60000;
+    }
+    
+    @Data
+    public static class Dedup {
+        // 是否启用消费幂等过滤
+        private boolean enabled = true;
+        
+        // 本地去重窗口（毫秒），窗口内重复投递的消息直接在本地过滤
+        private long localWindowMs = 600000;
+        
+        // 本地去重缓存的最大消息数
+        private int localMaxSize = 100000;
+        
+        // Redis去重记录的保留时间（秒）
+        private long redisTtlSeconds = 86400;
+        
+        // Redis中消费中标记的保留时间（秒），消费者宕机时超时后允许重新消费
+        private long consumingTtlSeconds = 60;
+    }
+    
+    @Data
+    public static class HotPathLog {
+        // 是否启用发送和消费路径的日志采样，关闭时每条消息都完整输出
+        private boolean enabled = true;
+        
+        // 日志类别：producer.send、consumer.receive、consumer.duplicate
+        private String categories = "producer.send;consumer.receive;consumer.duplicate";
+        
+        // 每个类别每N条输出一条，1为全部输出，0为不输出
+        private String sampleRates = "100;100;100";
+        
+        // 每个类别每秒最多输出的条数，0为不限制
+        private String maxPerSecond = "10;10;10";
+        
+        // 日志中消息体的最大长度，超过时截断，0为不截断
+        private int maxBodyLength = 256;
+    }
+    
+    @Data
+    public static class Quarantine {
+        // 是否启用毒消息隔离
+        private boolean enabled = true;
+        
+        // 同一消息以相同异常失败达到该次数后加入隔离
+        private int failureThreshold = 3;
+        
+        // 失败计数的过期时间（秒）
+        private long failureTtlSeconds = 86400;
+        
+        // 停放topic的后缀，隔离的消息转发到 原topic+后缀，需要在同一集群预先创建
+        private String parkingTopicSuffix = "_PARKING";
+        
+        // 每分钟最多新增的隔离记录数，防止下游故障时大量正常消息被隔离
+        private int maxPerMinute = 60;
+        
+        // 隔离记录本地缓存的兜底刷新间隔（毫秒），正常情况下依赖Redis发布订阅推送
+        private long refreshIntervalMs = 30000;
     }
 } 
\ No newline at end of file
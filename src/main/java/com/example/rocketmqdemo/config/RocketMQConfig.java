@@ -17,8 +17,18 @@ import java.util.Map;
 @Configuration
 public class RocketMQConfig {
 
+    // 共享客户端实例的实例名前缀
+    private static final String SHARED_INSTANCE_PREFIX = "DEMO_MQ_";
+
     @Autowired
     private MQProperties mqProperties;
+    
+    /**
+     * 集群共享的客户端实例名，实例名相同的客户端共用同一个MQClientInstance
+     */
+    public static String sharedInstanceName(String cluster) {
+        return SHARED_INSTANCE_PREFIX + cluster.toUpperCase();
+    }
 
     /**
      * 创建原始集群的RocketMQTemplate
@@ -30,6 +40,9 @@ public class RocketMQConfig {
         DefaultMQProducer producer = new DefaultMQProducer(mqProperties.getProducer().getGroup());
         producer.setNamesrvAddr(mqProperties.getNameServer());
         producer.setSendMsgTimeout(mqProperties.getProducer().getSendMessageTimeout());
+        if (mqProperties.isSharedClientInstance()) {
+            producer.setInstanceName(sharedInstanceName("origin"));
+        }
         log.info("Origin producer configured with ID: {}", mqProperties.getProducer().getGroup());
         rocketMQTemplate.setProducer(producer);
         rocketMQTemplate.setMessageConverter(new MappingJackson2MessageConverter());
@@ -200,6 +213,9 @@ public class RocketMQConfig {
             DefaultMQProducer producer = new DefaultMQProducer(producerId);
             producer.setNamesrvAddr(namesrvAddr);
             producer.setSendMsgTimeout(mqProperties.getProducer().getSendMessageTimeout());
+            if (mqProperties.isSharedClientInstance()) {
+                producer.setInstanceName(sharedInstanceName(cluster));
+            }
             
             log.info("{} producer configured with producer ID: {}", cluster, producerId);
             
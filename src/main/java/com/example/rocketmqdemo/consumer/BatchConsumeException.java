@@ -0,0 +1,21 @@
+package com.example.rocketmqdemo.consumer;
+
+/**
+ * 批量处理器部分失败时抛出，指明第一条失败消息在批次中的位置
+ * 该位置之前的消息确认消费，该位置及之后的消息重试
+ */
+public class BatchConsumeException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final int failedIndex;
+    
+    public BatchConsumeException(int failedIndex, Throwable cause) {
+        super("批量消费失败, 失败位置: " + failedIndex + (cause != null ? ", 错误: " + cause.getMessage() : ""), cause);
+        this.failedIndex = failedIndex;
+    }
+    
+    public int getFailedIndex() {
+        return failedIndex;
+    }
+}
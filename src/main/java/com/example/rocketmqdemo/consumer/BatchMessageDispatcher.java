@@ -0,0 +1,69 @@
+package com.example.rocketmqdemo.consumer;
+
+import com.example.rocketmqdemo.codec.MessageCodec;
+import com.example.rocketmqdemo.codec.MessageCodecRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把一批消息解码为处理器声明的类型后整批交给处理器
+ * 解码失败的消息及其后的消息不交给处理器，与处理器报告的失败一样通过ackIndex只重试失败的部分
+ */
+@Slf4j
+public class BatchMessageDispatcher<T> implements MessageListenerConcurrently {
+    
+    private final BatchMessageHandler<T> handler;
+    
+    private final Class<T> payloadType;
+    
+    private final MessageCodecRegistry codecRegistry;
+    
+    public BatchMessageDispatcher(BatchMessageHandler<T> handler, Class<T> payloadType, MessageCodecRegistry codecRegistry) {
+        this.handler = handler;
+        this.payloadType = payloadType;
+        this.codecRegistry = codecRegistry;
+    }
+    
+    @Override
+    public ConsumeConcurrentlyStatus consumeMessage(List<MessageExt> msgs, ConsumeConcurrentlyContext context) {
+        // 按顺序解码，遇到无法解码的消息时只处理之前的消息
+        List<T> payloads = new ArrayList<>(msgs.size());
+        for (MessageExt msg : msgs) {
+            try {
+                MessageCodec codec = codecRegistry.forContentType(msg.getUserProperty(MessageCodec.CONTENT_TYPE_PROPERTY));
+                payloads.add(codec.decode(msg.getBody(), payloadType));
+            } catch (Exception e) {
+                log.error("解码消息失败, topic: {}, msgId: {}, 类型: {}", msg.getTopic(), msg.getMsgId(), payloadType.getSimpleName(), e);
+                ConsumeFailures.record(msg, e);
+                break;
+            }
+        }
+        int decoded = payloads.size();
+        if (decoded == 0) {
+            return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+        }
+        
+        try {
+            handler.handleBatch(payloads, decoded == msgs.size() ? msgs : msgs.subList(0, decoded));
+        } catch (BatchConsumeException e) {
+            log.error("批量处理消息部分失败, topic: {}, 批次大小: {}, 失败位置: {}, 处理器: {}", 
+                    msgs.get(0).getTopic(), decoded, e.getFailedIndex(), handler.getClass().getSimpleName(), e);
+            // 失败位置明确时记录失败原因，整批失败不计入单条消息
+            if (e.getFailedIndex() >= 0 && e.getFailedIndex() < decoded) {
+                ConsumeFailures.record(msgs.get(e.getFailedIndex()), e.getCause() != null ? e.getCause() : e);
+            }
+            return PartialAck.retryFrom(context, Math.min(e.getFailedIndex(), decoded));
+        } catch (Exception e) {
+            log.error("批量处理消息时发生异常, topic: {}, 批次大小: {}, 处理器: {}", 
+                    msgs.get(0).getTopic(), decoded, handler.getClass().getSimpleName(), e);
+            return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+        }
+        return decoded == msgs.size() ? ConsumeConcurrentlyStatus.CONSUME_SUCCESS : PartialAck.retryFrom(context, decoded);
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.rocketmqdemo.consumer;
+
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.List;
+
+/**
+ * 按批次处理消息的业务处理器，适合每批消息一次批量写入
+ * 每批的最大消息数由rocketmq.consumer.consume-batch-max-sizes配置。
+ * 全部成功时正常返回；部分失败时抛出{@link BatchConsumeException}，失败位置之前的消息确认、之后的消息重试；
+ * 抛出其他异常时整批重试
+ * @param <T> 消息体类型，如MessageDTO；声明为String时JSON消息体按原文传入
+ */
+public interface BatchMessageHandler<T> {
+    
+    /**
+     * 处理一批消息
+     * @param payloads 解码后的消息体，与msgs一一对应
+     * @param msgs 原始消息
+     */
+    void handleBatch(List<T> payloads, List<MessageExt> msgs) throws Exception;
+}
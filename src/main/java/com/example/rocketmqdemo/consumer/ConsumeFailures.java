@@ -0,0 +1,75 @@
+package com.example.rocketmqdemo.consumer;
+
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 收集当前消费线程中每条消息的处理异常，供消息隔离按错误指纹统计失败次数
+ * 业务监听器捕获异常后调用{@link #record(MessageExt, Throwable)}即可参与隔离，未记录异常的失败不计入
+ */
+public final class ConsumeFailures {
+    
+    private static final ThreadLocal<Capture> CURRENT = ThreadLocal.withInitial(Capture::new);
+    
+    private ConsumeFailures() {
+    }
+    
+    /**
+     * 记录消息处理失败的异常，不在消息隔离范围内时忽略
+     */
+    public static void record(MessageExt msg, Throwable error) {
+        Capture capture = CURRENT.get();
+        if (capture.active) {
+            capture.errors.put(msg, error);
+        }
+    }
+    
+    /**
+     * 开始收集当前线程的异常
+     */
+    static void begin() {
+        Capture capture = CURRENT.get();
+        capture.errors.clear();
+        capture.active = true;
+    }
+    
+    /**
+     * 结束收集，返回本批次记录的异常
+     */
+    static Map<MessageExt, Throwable> end() {
+        Capture capture = CURRENT.get();
+        capture.active = false;
+        if (capture.errors.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<MessageExt, Throwable> errors = new IdentityHashMap<>(capture.errors);
+        capture.errors.clear();
+        return errors;
+    }
+    
+    /**
+     * 错误指纹：根异常类型及抛出位置，不包含错误信息中随消息变化的内容
+     */
+    static String fingerprint(Throwable error) {
+        Throwable root = error;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        StackTraceElement[] stackTrace = root.getStackTrace();
+        if (stackTrace.length == 0) {
+            return root.getClass().getName();
+        }
+        StackTraceElement top = stackTrace[0];
+        return root.getClass().getName() + "@" + top.getClassName() + "." + top.getMethodName() + ":" + top.getLineNumber();
+    }
+    
+    private static class Capture {
+        
+        private final Map<MessageExt, Throwable> errors = new IdentityHashMap<>();
+        
+        private boolean active;
+    }
+}
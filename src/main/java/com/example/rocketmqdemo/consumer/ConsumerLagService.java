@@ -0,0 +1,178 @@
+package com.example.rocketmqdemo.consumer;
+
+import com.example.rocketmqdemo.config.MQProperties;
+import com.example.rocketmqdemo.model.ConsumerLag;
+import com.example.rocketmqdemo.model.QueueLag;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.common.admin.ConsumeStats;
+import org.apache.rocketmq.common.admin.OffsetWrapper;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.tools.admin.DefaultMQAdminExt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 查询消费组在原始集群和业务集群上的消费堆积，用于判断切换消费者的时机
+ * 通过管理接口读取每个队列的Broker位点和消费位点，查询结果按rocketmq.monitor.lag-cache-ttl-ms缓存
+ */
+@Slf4j
+@Component
+public class ConsumerLagService {
+    
+    private static final String ADMIN_INSTANCE_PREFIX = "DEMO_MQ_ADMIN_";
+    
+    @Autowired
+    private MQProperties mqProperties;
+    
+    // 每个集群一个管理客户端，首次查询时创建
+    private final ConcurrentHashMap<String, DefaultMQAdminExt> adminClients = new ConcurrentHashMap<>();
+    
+    private final ConcurrentHashMap<String, ConsumerLag> lagCache = new ConcurrentHashMap<>();
+    
+    // 同一消费组、topic和集群的查询串行执行，缓存过期时只有一个线程访问集群
+    private final ConcurrentHashMap<String, Object> queryLocks = new ConcurrentHashMap<>();
+    
+    /**
+     * 对比消费组在原始集群和业务集群上的消费堆积
+     * @param consumerGroup 消费组
+     * @param topic 主题
+     * @param businessCluster 业务集群类型，为null时使用rocketmq.consumer.topic-clusters中配置的集群
+     * @return 按集群类型的消费堆积，原始集群在前
+     */
+    public Map<String, ConsumerLag> compareLag(String consumerGroup, String topic, String businessCluster) {
+        String cluster = businessCluster != null ? businessCluster : configuredCluster(topic);
+        Map<String, ConsumerLag> result = new LinkedHashMap<>();
+        result.put("origin", getLag(consumerGroup, topic, "origin"));
+        if (cluster != null && !"origin".equals(cluster)) {
+            result.put(cluster, getLag(consumerGroup, topic, cluster));
+        }
+        return result;
+    }
+    
+    /**
+     * 查询消费组在指定集群上的消费堆积，缓存未过期时直接返回缓存结果
+     */
+    public ConsumerLag getLag(String consumerGroup, String topic, String cluster) {
+        String key = cluster + ":" + consumerGroup + ":" + topic;
+        long ttlMs = mqProperties.getMonitor().getLagCacheTtlMs();
+        ConsumerLag cached = lagCache.get(key);
+        if (cached != null && System.currentTimeMillis() - cached.getQueriedAt() < ttlMs) {
+            return cached;
+        }
+        synchronized (queryLocks.computeIfAbsent(key, k -> new Object())) {
+            cached = lagCache.get(key);
+            if (cached != null && System.currentTimeMillis() - cached.getQueriedAt() < ttlMs) {
+                return cached;
+            }
+            // 查询失败的结果同样缓存，集群不可用时不会被看板反复访问
+            ConsumerLag lag = queryLag(consumerGroup, topic, cluster);
+            lagCache.put(key, lag);
+            return lag;
+        }
+    }
+    
+    private ConsumerLag queryLag(String consumerGroup, String topic, String cluster) {
+        String nameServer = mqProperties.getClusterAddress(cluster);
+        ConsumerLag.ConsumerLagBuilder builder = ConsumerLag.builder()
+                .consumerGroup(consumerGroup)
+                .topic(topic)
+                .cluster(cluster)
+                .nameServer(nameServer)
+                .queues(new ArrayList<>())
+                .queriedAt(System.currentTimeMillis());
+        if (nameServer == null || nameServer.isEmpty()) {
+            return builder.success(false).errorMessage("未配置" + cluster + "集群的NameServer地址").build();
+        }
+        
+        try {
+            ConsumeStats stats = adminClient(cluster, nameServer).examineConsumeStats(consumerGroup, topic);
+            List<QueueLag> queues = new ArrayList<>(stats.getOffsetTable().size());
+            long brokerOffset = 0;
+            long consumerOffset = 0;
+            long totalLag = 0;
+            for (Map.Entry<MessageQueue, OffsetWrapper> entry : stats.getOffsetTable().entrySet()) {
+                OffsetWrapper offset = entry.getValue();
+                long lag = Math.max(0, offset.getBrokerOffset() - offset.getConsumerOffset());
+                queues.add(QueueLag.builder()
+                        .brokerName(entry.getKey().getBrokerName())
+                        .queueId(entry.getKey().getQueueId())
+                        .brokerOffset(offset.getBrokerOffset())
+                        .consumerOffset(offset.getConsumerOffset())
+                        .lag(lag)
+                        .build());
+                brokerOffset += offset.getBrokerOffset();
+                consumerOffset += offset.getConsumerOffset();
+                totalLag += lag;
+            }
+            queues.sort((a, b) -> a.getBrokerName().equals(b.getBrokerName())
+                    ? Integer.compare(a.getQueueId(), b.getQueueId()) : a.getBrokerName().compareTo(b.getBrokerName()));
+            return builder.success(true)
+                    .brokerOffset(brokerOffset)
+                    .consumerOffset(consumerOffset)
+                    .totalLag(totalLag)
+                    .consumeTps(stats.getConsumeTps())
+                    .queues(queues)
+                    .build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return builder.success(false).errorMessage("查询被中断").build();
+        } catch (Exception e) {
+            log.warn("查询消费堆积失败, 集群: {}, consumerGroup: {}, topic: {}, 错误: {}", cluster, consumerGroup, topic, e.getMessage());
+            return builder.success(false).errorMessage(e.getMessage()).build();
+        }
+    }
+    
+    private DefaultMQAdminExt adminClient(String cluster, String nameServer) throws MQClientException {
+        DefaultMQAdminExt admin = adminClients.get(cluster);
+        if (admin != null) {
+            return admin;
+        }
+        synchronized (adminClients) {
+            admin = adminClients.get(cluster);
+            if (admin == null) {
+                admin = new DefaultMQAdminExt(mqProperties.getMonitor().getLagQueryTimeoutMs());
+                admin.setNamesrvAddr(nameServer);
+                admin.setInstanceName(ADMIN_INSTANCE_PREFIX + cluster);
+                admin.setAdminExtGroup(ADMIN_INSTANCE_PREFIX + cluster);
+                admin.start();
+                adminClients.put(cluster, admin);
+                log.info("创建{}集群的管理客户端, NameServer: {}", cluster, nameServer);
+            }
+            return admin;
+        }
+    }
+    
+    /**
+     * 按rocketmq.consumer.topics和topic-clusters查找topic配置的业务集群
+     */
+    private String configuredCluster(String topic) {
+        MQProperties.Consumer consumer = mqProperties.getConsumer();
+        if (consumer == null || consumer.getTopics() == null || consumer.getTopicClusters() == null) {
+            return null;
+        }
+        String[] topics = consumer.getTopics().split(";");
+        String[] topicClusters = consumer.getTopicClusters().split(";");
+        for (int i = 0; i < topics.length && i < topicClusters.length; i++) {
+            if (topics[i].trim().equals(topic)) {
+                return topicClusters[i].trim();
+            }
+        }
+        return null;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        for (DefaultMQAdminExt admin : adminClients.values()) {
+            admin.shutdown();
+        }
+        adminClients.clear();
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.rocketmqdemo.consumer;
+
+import com.example.rocketmqdemo.codec.MessageCodecRegistry;
+import com.example.rocketmqdemo.config.MQProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.listener.MessageListener;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按rocketmq.consumer.beans为每个消费组、topic解析消息监听器，启动时解析一次
+ * bean可以是RocketMQ的MessageListener，也可以是{@link TypedMessageHandler}或{@link BatchMessageHandler}（包装为按类型解码的分发器），
+ * 未配置时使用demoMessageConsumer
+ */
+@Slf4j
+@Component
+public class ConsumerListenerRegistry {
+    
+    private static final String DEFAULT_LISTENER_BEAN = "demoMessageConsumer";
+    
+    @Autowired
+    private ApplicationContext applicationContext;
+    
+    @Autowired
+    private MQProperties mqProperties;
+    
+    @Autowired
+    private MessageCodecRegistry codecRegistry;
+    
+    // 消费组:topic -> 消息监听器
+    private final Map<String, MessageListener> listeners = new LinkedHashMap<>();
+    
+    // 消费组:topic -> bean名称，用于展示
+    private final Map<String, String> beanNames = new LinkedHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        MQProperties.Consumer consumer = mqProperties.getConsumer();
+        if (consumer == null || consumer.getTopics() == null) {
+            return;
+        }
+        String[] topics = consumer.getTopics().split(";");
+        String[] consumerGroups = consumer.getGroup() != null ? consumer.getGroup().split(";") : new String[0];
+        String[] beans = consumer.getBeans() != null ? consumer.getBeans().split(";") : new String[0];
+        // 多个topic配置同一个bean时共用一个监听器
+        Map<String, MessageListener> resolved = new LinkedHashMap<>();
+        for (int i = 0; i < topics.length; i++) {
+            String consumerGroup = i < consumerGroups.length ? consumerGroups[i] : "defaultConsumerGroup";
+            String beanName = i < beans.length && !beans[i].trim().isEmpty() ? beans[i].trim() : DEFAULT_LISTENER_BEAN;
+            String key = consumerGroup + ":" + topics[i].trim();
+            listeners.put(key, resolved.computeIfAbsent(beanName, this::resolve));
+            beanNames.put(key, beanName);
+        }
+        log.info("消费者监听器配置: {}", beanNames);
+    }
+    
+    /**
+     * 获取消费组、topic配置的消息监听器
+     */
+    public MessageListener getListener(String consumerGroup, String topic) {
+        MessageListener listener = listeners.get(consumerGroup + ":" + topic);
+        return listener != null ? listener : resolveDefault();
+    }
+    
+    /**
+     * 各消费组、topic配置的监听器bean名称
+     */
+    public Map<String, String> getBeanNames() {
+        return beanNames;
+    }
+    
+    private MessageListener resolveDefault() {
+        return applicationContext.getBean(DEFAULT_LISTENER_BEAN, MessageListener.class);
+    }
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private MessageListener resolve(String beanName) {
+        Object bean = applicationContext.getBean(beanName);
+        if (bean instanceof MessageListener) {
+            return (MessageListener) bean;
+        }
+        if (bean instanceof TypedMessageHandler) {
+            Class<?> payloadType = resolvePayloadType(bean, TypedMessageHandler.class);
+            log.info("消息处理器: {}, 消息体类型: {}", beanName, payloadType.getSimpleName());
+            return new TypedMessageDispatcher((TypedMessageHandler) bean, payloadType, codecRegistry);
+        }
+        if (bean instanceof BatchMessageHandler) {
+            Class<?> payloadType = resolvePayloadType(bean, BatchMessageHandler.class);
+            log.info("批量消息处理器: {}, 消息体类型: {}", beanName, payloadType.getSimpleName());
+            return new BatchMessageDispatcher((BatchMessageHandler) bean, payloadType, codecRegistry);
+        }
+        throw new IllegalStateException("消费者bean " + beanName + " 不是MessageListener、TypedMessageHandler或BatchMessageHandler: " 
+                + bean.getClass().getName());
+    }
+    
+    /**
+     * 从实现类声明的泛型参数解析消息体类型，无法解析时按Object解码（JSON为原文，二进制为MessageDTO）
+     */
+    private Class<?> resolvePayloadType(Object bean, Class<?> handlerInterface) {
+        Class<?> payloadType = GenericTypeResolver.resolveTypeArgument(AopUtils.getTargetClass(bean), handlerInterface);
+        return payloadType != null ? payloadType : Object.class;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.rocketmqdemo.consumer;
+
+/**
+ * 消费者集群切换方式
+ */
+public enum ConsumerSwitchMode {
+    
+    /**
+     * 先停止旧集群消费者，再启动新集群消费者，切换期间不消费消息
+     */
+    BREAK_BEFORE_MAKE,
+    
+    /**
+     * 先启动新集群消费者，等待其分配到队列并开始拉取，重叠一段时间后再排空并停止旧集群消费者
+     */
+    MAKE_BEFORE_BREAK;
+    
+    /**
+     * 解析配置中的切换方式，无法识别时返回默认方式
+     */
+    public static ConsumerSwitchMode parse(String value, ConsumerSwitchMode defaultMode) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultMode;
+        }
+        try {
+            return ConsumerSwitchMode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultMode;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.rocketmqdemo.consumer;
+
+import com.example.rocketmqdemo.codec.CompressorRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.List;
+
+/**
+ * 在业务监听器之前解压被压缩的消息，未压缩的消息直接透传，不产生额外拷贝
+ */
+@Slf4j
+public class DecompressingMessageListener implements MessageListenerConcurrently {
+    
+    private final MessageListenerConcurrently delegate;
+    
+    private final CompressorRegistry compressorRegistry;
+    
+    public DecompressingMessageListener(MessageListenerConcurrently delegate, CompressorRegistry compressorRegistry) {
+        this.delegate = delegate;
+        this.compressorRegistry = compressorRegistry;
+    }
+    
+    @Override
+    public ConsumeConcurrentlyStatus consumeMessage(List<MessageExt> msgs, ConsumeConcurrentlyContext context) {
+        for (int i = 0; i < msgs.size(); i++) {
+            MessageExt msg = msgs.get(i);
+            try {
+                compressorRegistry.decompressIfNeeded(msg);
+            } catch (Exception e) {
+                log.error("解压消息失败, topic: {}, msgId: {}, 错误: {}", msg.getTopic(), msg.getMsgId(), e.getMessage(), e);
+                ConsumeFailures.record(msg, e);
+                if (i == 0) {
+                    return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+                }
+                // 先消费解压成功的部分，解压失败的消息及其后的消息重试
+                ConsumeConcurrentlyStatus status = delegate.consumeMessage(msgs.subList(0, i), context);
+                return status == ConsumeConcurrentlyStatus.CONSUME_SUCCESS ? PartialAck.retryFrom(context, i) : status;
+            }
+        }
+        return delegate.consumeMessage(msgs, context);
+    }
+}
@@ -1,37 +1,49 @@
 package com.example.rocketmqdemo.consumer;
 
+import com.example.rocketmqdemo.codec.MessageCodecRegistry;
+import com.example.rocketmqdemo.config.HotPathLogSampler;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
 import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @Slf4j
 @Component
 public class DemoMessageConsumer implements MessageListenerConcurrently {
+    
+    @Autowired
+    private MessageCodecRegistry codecRegistry;
+    
+    @Autowired
+    private HotPathLogSampler logSampler;
 
     @Override
     public ConsumeConcurrentlyStatus consumeMessage(List<MessageExt> msgs, ConsumeConcurrentlyContext context) {
-        for (MessageExt msg : msgs) {
+        for (int i = 0; i < msgs.size(); i++) {
+            MessageExt msg = msgs.get(i);
             try {
-                String topic = msg.getTopic();
-                String tags = msg.getTags();
-                String msgId = msg.getMsgId();
-                String content = new String(msg.getBody(), StandardCharsets.UTF_8);
+                // 按消息的contentType属性解码，JSON消息为字符串，二进制消息为MessageDTO
+                Object content = codecRegistry.decode(msg, Object.class);
                 
-                log.info("接收到消息 - topic: {}, tags: {}, msgId: {}, content: {}", 
-                        topic, tags, msgId, content);
+                // 按采样输出，消息体超长时截断
+                if (logSampler.sample(HotPathLogSampler.CONSUMER_RECEIVE)) {
+                    log.info("接收到消息 - topic: {}, tags: {}, msgId: {}, content: {}", 
+                            msg.getTopic(), msg.getTags(), msg.getMsgId(), logSampler.truncate(content));
+                }
                 
                 // 处理消息的业务逻辑...
                 
             } catch (Exception e) {
-                log.error("处理消息时发生异常", e);
-                // 如果需要重试，返回RECONSUME_LATER
-                return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+                log.error("处理消息时发生异常, topic: {}, msgId: {}", msg.getTopic(), msg.getMsgId(), e);
+                // 记录失败原因，同一消息反复以相同异常失败时加入隔离
+                ConsumeFailures.record(msg, e);
+                // 确认之前已处理的消息，只重试失败的消息及其后的消息
+                return PartialAck.retryFrom(context, i);
             }
         }
         
@@ -0,0 +1,106 @@
+package com.example.rocketmqdemo.consumer;
+
+import com.example.rocketmqdemo.config.HotPathLogSampler;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 消费幂等过滤，在业务监听器之前过滤双写和集群切换产生的重复消息
+ * 重复消息直接确认，其他消费者正在消费的消息稍后重试，
+ * 业务监听器消费成功的消息记录为已消费，消费失败的消息释放去重记录等待重试
+ */
+@Slf4j
+public class IdempotentMessageListener implements MessageListenerConcurrently {
+    
+    private final MessageListenerConcurrently delegate;
+    
+    private final MessageDeduplicator deduplicator;
+    
+    private final String consumerGroup;
+    
+    private final HotPathLogSampler logSampler;
+    
+    public IdempotentMessageListener(MessageListenerConcurrently delegate, MessageDeduplicator deduplicator, String consumerGroup,
+                                     HotPathLogSampler logSampler) {
+        this.delegate = delegate;
+        this.deduplicator = deduplicator;
+        this.consumerGroup = consumerGroup;
+        this.logSampler = logSampler;
+    }
+    
+    @Override
+    public ConsumeConcurrentlyStatus consumeMessage(List<MessageExt> msgs, ConsumeConcurrentlyContext context) {
+        if (!deduplicator.isEnabled()) {
+            return delegate.consumeMessage(msgs, context);
+        }
+        
+        // 过滤重复消息，记录保留下来的消息在原批次中的位置
+        List<MessageExt> fresh = new ArrayList<>(msgs.size());
+        int[] originIndexes = new int[msgs.size()];
+        for (int i = 0; i < msgs.size(); i++) {
+            MessageExt msg = msgs.get(i);
+            MessageDeduplicator.Decision decision = deduplicator.tryAcquire(consumerGroup, msg);
+            if (decision == MessageDeduplicator.Decision.DUPLICATE) {
+                if (logSampler.sample(HotPathLogSampler.CONSUMER_DUPLICATE)) {
+                    log.info("过滤重复消息, consumerGroup: {}, topic: {}, key: {}, msgId: {}",
+                            consumerGroup, msg.getTopic(), MessageDeduplicator.dedupKey(msg), msg.getMsgId());
+                }
+                continue;
+            }
+            if (decision == MessageDeduplicator.Decision.CONSUMING) {
+                log.info("消息正在被其他消费者消费，稍后重试, consumerGroup: {}, topic: {}, key: {}",
+                        consumerGroup, msg.getTopic(), MessageDeduplicator.dedupKey(msg));
+                releaseAll(fresh);
+                return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+            }
+            originIndexes[fresh.size()] = i;
+            fresh.add(msg);
+        }
+        if (fresh.isEmpty()) {
+            return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+        }
+        
+        ConsumeConcurrentlyStatus status;
+        try {
+            status = delegate.consumeMessage(fresh, context);
+        } catch (RuntimeException e) {
+            releaseAll(fresh);
+            throw e;
+        }
+        if (status != ConsumeConcurrentlyStatus.CONSUME_SUCCESS) {
+            releaseAll(fresh);
+            return status;
+        }
+        
+        // 业务监听器通过ackIndex只确认了部分消息时，未确认的消息释放去重记录，
+        // 并把ackIndex换算为原批次中的位置：确认到第一条未确认消息之前，其间过滤掉的重复消息一并确认
+        int acked = Math.max(-1, Math.min(context.getAckIndex(), fresh.size() - 1));
+        for (int i = 0; i < fresh.size(); i++) {
+            if (i <= acked) {
+                deduplicator.markConsumed(consumerGroup, fresh.get(i));
+            } else {
+                deduplicator.release(consumerGroup, fresh.get(i));
+            }
+        }
+        if (acked < fresh.size() - 1) {
+            int originAcked = originIndexes[acked + 1] - 1;
+            if (originAcked < 0) {
+                return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+            }
+            context.setAckIndex(originAcked);
+        }
+        return status;
+    }
+    
+    private void releaseAll(List<MessageExt> msgs) {
+        for (MessageExt msg : msgs) {
+            deduplicator.release(consumerGroup, msg);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.rocketmqdemo.consumer;
+
+import com.example.rocketmqdemo.producer.EncodedMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 顺序消费监听器，队列内按分片键并行
+ * RocketMQ的顺序消费对每个队列串行处理，同一队列内不同业务键的消息也必须排队。
+ * 该监听器把一批消息按分片键分组，同一分片键的消息保持原有顺序串行处理，不同分片键的消息并行处理，
+ * 任意分组失败时整批挂起重试，保证同一分片键的消息不会乱序
+ */
+@Slf4j
+public class KeyShardedOrderlyListener implements MessageListenerOrderly {
+    
+    private final MessageListenerConcurrently delegate;
+    
+    private final ExecutorService shardExecutor;
+    
+    public KeyShardedOrderlyListener(MessageListenerConcurrently delegate, ExecutorService shardExecutor) {
+        this.delegate = delegate;
+        this.shardExecutor = shardExecutor;
+    }
+    
+    @Override
+    public ConsumeOrderlyStatus consumeMessage(List<MessageExt> msgs, ConsumeOrderlyContext context) {
+        Map<String, List<MessageExt>> shards = groupByShardingKey(msgs);
+        
+        // 只有一个分片时直接在当前线程处理，避免线程切换
+        if (shards.size() == 1) {
+            return consumeShard(shards.values().iterator().next(), context) ? ConsumeOrderlyStatus.SUCCESS
+                    : ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+        }
+        
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(shards.size());
+        for (List<MessageExt> shard : shards.values()) {
+            futures.add(CompletableFuture.supplyAsync(() -> consumeShard(shard, context), shardExecutor));
+        }
+        
+        boolean success = true;
+        for (CompletableFuture<Boolean> future : futures) {
+            try {
+                success &= future.join();
+            } catch (Exception e) {
+                log.error("分片消费异常, queue: {}, 错误: {}", context.getMessageQueue(), e.getMessage(), e);
+                success = false;
+            }
+        }
+        return success ? ConsumeOrderlyStatus.SUCCESS : ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+    }
+    
+    /**
+     * 按消息在队列中的顺序逐条处理同一分片键的消息，遇到失败立即停止
+     */
+    private boolean consumeShard(List<MessageExt> shard, ConsumeOrderlyContext context) {
+        for (MessageExt msg : shard) {
+            List<MessageExt> single = new ArrayList<>(1);
+            single.add(msg);
+            ConsumeConcurrentlyStatus status = delegate.consumeMessage(single, new ConsumeConcurrentlyContext(context.getMessageQueue()));
+            if (status != ConsumeConcurrentlyStatus.CONSUME_SUCCESS) {
+                log.warn("顺序消息消费失败，挂起队列后重试, topic: {}, msgId: {}, queue: {}",
+                        msg.getTopic(), msg.getMsgId(), context.getMessageQueue());
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 按生产者写入的分片键分组，没有分片键的消息归为同一组串行处理
+     * 消息Keys是每条消息唯一的ID，不能作为分片键，否则同一队列的消息会全部并行而失去顺序
+     */
+    private static Map<String, List<MessageExt>> groupByShardingKey(List<MessageExt> msgs) {
+        Map<String, List<MessageExt>> shards = new LinkedHashMap<>();
+        for (MessageExt msg : msgs) {
+            String key = msg.getUserProperty(EncodedMessage.SHARDING_KEY_PROPERTY);
+            if (key == null) {
+                key = "";
+            }
+            shards.computeIfAbsent(key, k -> new ArrayList<>()).add(msg);
+        }
+        return shards;
+    }
+}
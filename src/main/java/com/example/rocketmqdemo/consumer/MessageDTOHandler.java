@@ -0,0 +1,30 @@
+package com.example.rocketmqdemo.consumer;
+
+import com.example.rocketmqdemo.config.HotPathLogSampler;
+import com.example.rocketmqdemo.model.MessageDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * MessageDTO消息处理器示例，在rocketmq.consumer.beans中配置为messageDTOHandler即可使用
+ * JSON和二进制格式的消息都解码为MessageDTO
+ */
+@Slf4j
+@Component
+public class MessageDTOHandler implements TypedMessageHandler<MessageDTO> {
+    
+    @Autowired
+    private HotPathLogSampler logSampler;
+    
+    @Override
+    public void handle(MessageDTO payload, MessageExt msg) {
+        if (logSampler.sample(HotPathLogSampler.CONSUMER_RECEIVE)) {
+            log.info("接收到消息 - topic: {}, msgId: {}, id: {}, businessId: {}, content: {}", 
+                    msg.getTopic(), msg.getMsgId(), payload.getId(), payload.getBusinessId(), logSampler.truncate(payload.getContent()));
+        }
+        
+        // 处理消息的业务逻辑...
+    }
+}
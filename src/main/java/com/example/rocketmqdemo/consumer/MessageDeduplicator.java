@@ -0,0 +1,244 @@
+package com.example.rocketmqdemo.consumer;
+
+import com.example.rocketmqdemo.config.MQProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消费幂等的两级去重
+ * 第一级为本地按时间窗口、容量有界的已消费集合，命中时直接过滤，不访问Redis；
+ * 第二级为Redis SETNX，只在本地未命中时访问，用于跨节点、跨集群消费者以及重启后的去重。
+ * Redis中先写入消费中标记，消费成功后改为已消费并延长保留时间，消费失败时删除，
+ * 消费者宕机时消费中标记超时后消息可以被重新消费
+ */
+@Slf4j
+@Component
+public class MessageDeduplicator {
+    
+    private static final String DEDUP_KEY_PREFIX = "demo-mq:consumer:dedup:";
+    
+    private static final String CONSUMING = "CONSUMING";
+    
+    private static final String CONSUMED = "CONSUMED";
+    
+    // 本地缓存分段数，降低多个消费线程之间的锁竞争
+    private static final int SEGMENTS = 16;
+    
+    /**
+     * 去重结果
+     */
+    public enum Decision {
+        
+        /**
+         * 首次消费，已占用去重记录
+         */
+        NEW,
+        
+        /**
+         * 已消费过的重复消息
+         */
+        DUPLICATE,
+        
+        /**
+         * 其他消费者正在消费同一条消息，需要稍后重试
+         */
+        CONSUMING
+    }
+    
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+    
+    @Autowired
+    private MQProperties mqProperties;
+    
+    private LocalSegment[] segments;
+    
+    private final AtomicLong localHits = new AtomicLong();
+    
+    private final AtomicLong remoteHits = new AtomicLong();
+    
+    private final AtomicLong misses = new AtomicLong();
+    
+    private final AtomicLong consumingConflicts = new AtomicLong();
+    
+    private final AtomicLong redisErrors = new AtomicLong();
+    
+    @PostConstruct
+    public void init() {
+        int segmentSize = Math.max(1, mqProperties.getDedup().getLocalMaxSize() / SEGMENTS);
+        segments = new LocalSegment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new LocalSegment(segmentSize);
+        }
+    }
+    
+    public boolean isEnabled() {
+        return mqProperties.getDedup().isEnabled();
+    }
+    
+    /**
+     * 消息的去重键：优先使用消息Keys（生产者写入MessageDTO的id），其次使用消息唯一ID
+     * 双写时消息唯一ID在编码时生成，两个集群收到的消息唯一ID相同
+     */
+    public static String dedupKey(MessageExt msg) {
+        String keys = msg.getKeys();
+        if (keys != null && !keys.isEmpty()) {
+            return keys;
+        }
+        String uniqId = MessageClientIDSetter.getUniqID(msg);
+        return uniqId != null ? uniqId : msg.getMsgId();
+    }
+    
+    /**
+     * 尝试占用消息的去重记录
+     * @param consumerGroup 消费组，不同消费组各自去重
+     * @param msg 消息
+     * @return 去重结果
+     */
+    public Decision tryAcquire(String consumerGroup, MessageExt msg) {
+        String key = consumerGroup + ":" + msg.getTopic() + ":" + dedupKey(msg);
+        if (segmentOf(key).contains(key, System.currentTimeMillis())) {
+            localHits.incrementAndGet();
+            return Decision.DUPLICATE;
+        }
+        
+        MQProperties.Dedup config = mqProperties.getDedup();
+        String redisKey = DEDUP_KEY_PREFIX + key;
+        try {
+            // 消费中标记恰好在两次访问之间过期时再尝试占用一次
+            for (int attempt = 0; attempt < 2; attempt++) {
+                Boolean acquired = redisTemplate.opsForValue().setIfAbsent(redisKey, CONSUMING, config.getConsumingTtlSeconds(), TimeUnit.SECONDS);
+                if (Boolean.TRUE.equals(acquired)) {
+                    misses.incrementAndGet();
+                    return Decision.NEW;
+                }
+                String state = redisTemplate.opsForValue().get(redisKey);
+                if (CONSUMED.equals(state)) {
+                    remoteHits.incrementAndGet();
+                    // 回填本地缓存，后续重复投递直接在本地过滤
+                    segmentOf(key).put(key, System.currentTimeMillis(), config.getLocalWindowMs());
+                    return Decision.DUPLICATE;
+                }
+                if (state != null) {
+                    break;
+                }
+            }
+            consumingConflicts.incrementAndGet();
+            return Decision.CONSUMING;
+        } catch (Exception e) {
+            // Redis不可用时放行，由业务自身的幂等兜底
+            redisErrors.incrementAndGet();
+            log.warn("访问Redis去重记录失败，放行消息, key: {}, 错误: {}", key, e.getMessage());
+            misses.incrementAndGet();
+            return Decision.NEW;
+        }
+    }
+    
+    /**
+     * 消费成功，记录为已消费
+     */
+    public void markConsumed(String consumerGroup, MessageExt msg) {
+        String key = consumerGroup + ":" + msg.getTopic() + ":" + dedupKey(msg);
+        MQProperties.Dedup config = mqProperties.getDedup();
+        segmentOf(key).put(key, System.currentTimeMillis(), config.getLocalWindowMs());
+        try {
+            redisTemplate.opsForValue().set(DEDUP_KEY_PREFIX + key, CONSUMED, config.getRedisTtlSeconds(), TimeUnit.SECONDS);
+        } catch (Exception e) {
+            redisErrors.incrementAndGet();
+            log.warn("写入Redis去重记录失败, key: {}, 错误: {}", key, e.getMessage());
+        }
+    }
+    
+    /**
+     * 消费失败，释放去重记录，重试时可以重新消费
+     */
+    public void release(String consumerGroup, MessageExt msg) {
+        String key = consumerGroup + ":" + msg.getTopic() + ":" + dedupKey(msg);
+        try {
+            redisTemplate.delete(DEDUP_KEY_PREFIX + key);
+        } catch (Exception e) {
+            redisErrors.incrementAndGet();
+            log.warn("删除Redis去重记录失败, key: {}, 错误: {}", key, e.getMessage());
+        }
+    }
+    
+    /**
+     * 去重统计
+     * 本地缓存只记录确定已消费的消息键，不会误判，因此没有单独的误判计数；
+     * remoteHits为本地未命中（已过期或被淘汰）而由Redis识别出的重复消息
+     */
+    public Map<String, Object> getStats() {
+        long local = localHits.get();
+        long remote = remoteHits.get();
+        long miss = misses.get();
+        long total = local + remote + miss;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("localHits", local);
+        stats.put("remoteHits", remote);
+        stats.put("misses", miss);
+        stats.put("consumingConflicts", consumingConflicts.get());
+        stats.put("redisErrors", redisErrors.get());
+        stats.put("localHitRatio", total > 0 ? (double) local / total : 0D);
+        int localSize = 0;
+        for (LocalSegment segment : segments) {
+            localSize += segment.size();
+        }
+        stats.put("localSize", localSize);
+        return stats;
+    }
+    
+    private LocalSegment segmentOf(String key) {
+        return segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+    }
+    
+    /**
+     * 本地已消费集合的一个分段，按插入顺序淘汰，超过容量时淘汰最早的记录
+     */
+    private static class LocalSegment {
+        
+        private final LinkedHashMap<String, Long> expireAt;
+        
+        LocalSegment(int maxSize) {
+            this.expireAt = new LinkedHashMap<String, Long>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+        
+        synchronized boolean contains(String key, long now) {
+            Long expire = expireAt.get(key);
+            if (expire == null) {
+                return false;
+            }
+            if (expire < now) {
+                expireAt.remove(key);
+                return false;
+            }
+            return true;
+        }
+        
+        synchronized void put(String key, long now, long windowMs) {
+            // 先删除再插入，保证按最近一次写入的时间淘汰
+            expireAt.remove(key);
+            expireAt.put(key, now + windowMs);
+        }
+        
+        synchronized int size() {
+            return expireAt.size();
+        }
+    }
+}
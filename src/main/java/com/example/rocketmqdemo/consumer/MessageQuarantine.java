@@ -0,0 +1,409 @@
+package com.example.rocketmqdemo.consumer;
+
+import com.alibaba.fastjson.JSON;
+import com.example.rocketmqdemo.config.MQProperties;
+import com.example.rocketmqdemo.model.QuarantineEntry;
+import com.example.rocketmqdemo.producer.RocketMQProducer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 毒消息隔离
+ * 同一条消息以相同的错误指纹失败达到阈值后加入隔离集合（Redis哈希，本地保存一份），
+ * 之后的投递不再交给业务监听器，直接转发到停放topic（原topic加后缀）并确认，避免反复重试占用消费线程。
+ * 隔离集合变更通过Redis发布订阅通知所有节点，并定期从Redis全量刷新；Redis不可用时不隔离
+ */
+@Slf4j
+@Component
+public class MessageQuarantine {
+    
+    private static final String QUARANTINE_KEY = "demo-mq:consumer:quarantine";
+    
+    private static final String FAILURE_KEY_PREFIX = "demo-mq:consumer:quarantine:failures:";
+    
+    private static final String QUARANTINE_CHANNEL = "demo-mq:consumer:quarantine:channel";
+    
+    // 已解除隔离、停放消息等待重新投递的记录，重新投递成功后删除；消费路径不读取，不会再次停放
+    private static final String PENDING_REDELIVERY_KEY = "demo-mq:consumer:quarantine:pending-redelivery";
+    
+    /**
+     * 停放消息属性：原始topic
+     */
+    public static final String ORIGIN_TOPIC_PROPERTY = "quarantineOriginTopic";
+    
+    /**
+     * 停放消息属性：消费组
+     */
+    public static final String CONSUMER_GROUP_PROPERTY = "quarantineConsumerGroup";
+    
+    /**
+     * 停放消息属性：错误指纹
+     */
+    public static final String FINGERPRINT_PROPERTY = "quarantineFingerprint";
+    
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+    
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    
+    @Autowired
+    private RocketMQProducer producer;
+    
+    @Autowired
+    private MQProperties mqProperties;
+    
+    // 消费者容器依赖隔离组件，延迟注入避免循环依赖
+    @Lazy
+    @Autowired
+    private RocketMQConsumerContainer consumerContainer;
+    
+    // 消费组:topic:消息键 -> 隔离记录
+    private final ConcurrentHashMap<String, QuarantineEntry> quarantined = new ConcurrentHashMap<>();
+    
+    // 每分钟加入隔离的数量，超过上限时视为下游整体故障，暂停隔离
+    private final AtomicLong quotaMinute = new AtomicLong();
+    
+    private final AtomicInteger quotaUsed = new AtomicInteger();
+    
+    private final AtomicLong quarantinedCount = new AtomicLong();
+    
+    private final AtomicLong parkedCount = new AtomicLong();
+    
+    private final AtomicLong parkFailures = new AtomicLong();
+    
+    private final AtomicLong releasedCount = new AtomicLong();
+    
+    private final AtomicLong rateLimited = new AtomicLong();
+    
+    private final AtomicLong redisErrors = new AtomicLong();
+    
+    @PostConstruct
+    public void init() {
+        refresh();
+        // 其他节点变更隔离集合后重新加载
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> refresh(), new ChannelTopic(QUARANTINE_CHANNEL));
+    }
+    
+    public boolean isEnabled() {
+        return mqProperties.getQuarantine().isEnabled();
+    }
+    
+    /**
+     * 是否存在被隔离的消息，不存在时消费路径不需要逐条检查
+     */
+    public boolean hasQuarantined() {
+        return !quarantined.isEmpty();
+    }
+    
+    /**
+     * 消息是否已被隔离，只读取本地集合
+     */
+    public boolean isQuarantined(String consumerGroup, MessageExt msg) {
+        return quarantined.containsKey(entryKey(consumerGroup, msg.getTopic(), MessageDeduplicator.dedupKey(msg)));
+    }
+    
+    /**
+     * 记录一次处理失败，同一错误指纹的失败次数达到阈值时加入隔离
+     * @param consumerGroup 消费组
+     * @param msg 消息
+     * @param error 处理异常
+     */
+    public void recordFailure(String consumerGroup, MessageExt msg, Throwable error) {
+        MQProperties.Quarantine config = mqProperties.getQuarantine();
+        String messageKey = MessageDeduplicator.dedupKey(msg);
+        String key = entryKey(consumerGroup, msg.getTopic(), messageKey);
+        if (quarantined.containsKey(key)) {
+            return;
+        }
+        String fingerprint = ConsumeFailures.fingerprint(error);
+        String failureKey = failureKey(key, fingerprint);
+        long failures;
+        try {
+            Long count = redisTemplate.opsForValue().increment(failureKey);
+            redisTemplate.expire(failureKey, config.getFailureTtlSeconds(), TimeUnit.SECONDS);
+            failures = count != null ? count : 0L;
+        } catch (Exception e) {
+            redisErrors.incrementAndGet();
+            log.warn("记录消息失败次数失败, key: {}, 错误: {}", key, e.getMessage());
+            return;
+        }
+        if (failures < config.getFailureThreshold()) {
+            return;
+        }
+        if (!acquireQuota(config.getMaxPerMinute())) {
+            rateLimited.incrementAndGet();
+            log.warn("本分钟加入隔离的消息数已达上限{}，可能是下游整体故障，暂不隔离, key: {}, 指纹: {}",
+                    config.getMaxPerMinute(), key, fingerprint);
+            return;
+        }
+        
+        QuarantineEntry entry = QuarantineEntry.builder()
+                .consumerGroup(consumerGroup)
+                .topic(msg.getTopic())
+                .messageKey(messageKey)
+                .msgId(msg.getMsgId())
+                .fingerprint(fingerprint)
+                .errorMessage(String.valueOf(error.getMessage()))
+                .failures(failures)
+                .quarantinedAt(System.currentTimeMillis())
+                .build();
+        quarantined.put(key, entry);
+        quarantinedCount.incrementAndGet();
+        save(key, entry);
+        publish(key);
+        log.warn("消息以相同错误连续失败{}次，加入隔离, consumerGroup: {}, topic: {}, key: {}, msgId: {}, 指纹: {}, 错误: {}",
+                failures, consumerGroup, msg.getTopic(), messageKey, msg.getMsgId(), fingerprint, error.getMessage());
+    }
+    
+    /**
+     * 把被隔离的消息转发到停放topic，消息体和属性保持原样
+     * @param consumerGroup 消费组
+     * @param cluster 当前消费的集群，停放消息写入同一集群
+     * @param msg 消息
+     * @return true表示已停放，可以确认；false表示转发失败，需要重试
+     */
+    public boolean park(String consumerGroup, String cluster, MessageExt msg) {
+        String key = entryKey(consumerGroup, msg.getTopic(), MessageDeduplicator.dedupKey(msg));
+        QuarantineEntry entry = quarantined.get(key);
+        Message parked = copyOf(msg, parkingTopic(msg.getTopic()));
+        MessageAccessor.putProperty(parked, ORIGIN_TOPIC_PROPERTY, msg.getTopic());
+        MessageAccessor.putProperty(parked, CONSUMER_GROUP_PROPERTY, consumerGroup);
+        if (entry != null) {
+            MessageAccessor.putProperty(parked, FINGERPRINT_PROPERTY, entry.getFingerprint());
+        }
+        try {
+            SendResult result = producer.forward(cluster, parked);
+            if (result.getSendStatus() != SendStatus.SEND_OK) {
+                parkFailures.incrementAndGet();
+                log.error("转发隔离消息到停放topic失败, key: {}, status: {}", key, result.getSendStatus());
+                return false;
+            }
+            parkedCount.incrementAndGet();
+            if (entry != null) {
+                entry.setParkedCluster(cluster);
+                entry.setParkedMsgId(result.getMsgId());
+                entry.setParkedCount(entry.getParkedCount() + 1);
+                entry.setLastParkedAt(System.currentTimeMillis());
+                save(key, entry);
+            }
+            log.warn("隔离消息已转发到停放topic, key: {}, msgId: {}, 停放topic: {}, 集群: {}",
+                    key, msg.getMsgId(), parked.getTopic(), cluster);
+            return true;
+        } catch (Exception e) {
+            parkFailures.incrementAndGet();
+            log.error("转发隔离消息到停放topic异常, key: {}, 错误: {}", key, e.getMessage(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * 解除隔离，并可以把停放的消息重新投递到原始topic
+     * 需要重新投递时先把记录写入待重新投递集合再解除隔离，重新投递成功后才删除；
+     * 重新投递失败时记录保留在待重新投递集合中，再次调用即可重试
+     * @param consumerGroup 消费组
+     * @param topic 原始topic
+     * @param messageKey 消息键
+     * @param redeliver 是否重新投递停放的消息
+     * @return 解除的隔离记录，重新投递时redeliveredCluster为实际投递的集群，不存在时返回null
+     */
+    public QuarantineEntry release(String consumerGroup, String topic, String messageKey, boolean redeliver) throws Exception {
+        String key = entryKey(consumerGroup, topic, messageKey);
+        QuarantineEntry entry = quarantined.get(key);
+        String json = (String) redisTemplate.opsForHash().get(QUARANTINE_KEY, key);
+        if (json == null) {
+            // 上一次解除隔离后重新投递失败的记录
+            json = (String) redisTemplate.opsForHash().get(PENDING_REDELIVERY_KEY, key);
+        }
+        if (json != null) {
+            entry = JSON.parseObject(json, QuarantineEntry.class);
+        }
+        if (entry == null) {
+            return null;
+        }
+        boolean redeliverParked = redeliver && entry.getParkedMsgId() != null;
+        if (redeliverParked) {
+            // 写入失败时抛出异常，隔离记录保持不变
+            redisTemplate.opsForHash().put(PENDING_REDELIVERY_KEY, key, JSON.toJSONString(entry));
+        }
+        // 先解除隔离再重新投递，否则重新投递的消息会再次被停放
+        quarantined.remove(key);
+        redisTemplate.opsForHash().delete(QUARANTINE_KEY, key);
+        redisTemplate.delete(failureKey(key, entry.getFingerprint()));
+        publish(key);
+        releasedCount.incrementAndGet();
+        log.warn("解除消息隔离, key: {}, 重新投递: {}", key, redeliver);
+        
+        if (redeliverParked) {
+            // 停放消息从停放时所在的集群读取，重新投递到消费组当前消费的集群，切换集群后不会投递到已不再消费的旧集群
+            MessageExt parked = producer.viewMessage(entry.getParkedCluster(), parkingTopic(topic), entry.getParkedMsgId());
+            String targetCluster = consumerContainer.getCurrentCluster(consumerGroup, topic);
+            if (targetCluster == null) {
+                log.warn("本节点没有运行该消费者，无法确定当前消费集群，重新投递到停放时所在的集群, key: {}, 集群: {}",
+                        key, entry.getParkedCluster());
+                targetCluster = entry.getParkedCluster();
+            }
+            Message message = copyOf(parked, topic);
+            SendResult result = producer.forward(targetCluster, message);
+            if (result.getSendStatus() != SendStatus.SEND_OK) {
+                throw new IllegalStateException("已解除隔离，但重新投递失败，记录保留在待重新投递列表中，可再次解除以重试, status: "
+                        + result.getSendStatus());
+            }
+            entry.setRedeliveredCluster(targetCluster);
+            log.warn("停放消息已重新投递, key: {}, 集群: {}, msgId: {}", key, targetCluster, result.getMsgId());
+        }
+        // 不需要重新投递或重新投递成功，删除可能遗留的待重新投递记录
+        try {
+            redisTemplate.opsForHash().delete(PENDING_REDELIVERY_KEY, key);
+        } catch (Exception e) {
+            redisErrors.incrementAndGet();
+            log.warn("删除待重新投递记录失败, key: {}, 错误: {}", key, e.getMessage());
+        }
+        return entry;
+    }
+    
+    /**
+     * 已解除隔离但重新投递失败、等待再次解除以重试的记录
+     */
+    public List<QuarantineEntry> listPendingRedelivery() {
+        List<QuarantineEntry> entries = new ArrayList<>();
+        for (Object json : redisTemplate.opsForHash().values(PENDING_REDELIVERY_KEY)) {
+            entries.add(JSON.parseObject((String) json, QuarantineEntry.class));
+        }
+        return entries;
+    }
+    
+    /**
+     * 所有被隔离的消息，优先读取Redis
+     */
+    public List<QuarantineEntry> list() {
+        refresh();
+        return new ArrayList<>(quarantined.values());
+    }
+    
+    /**
+     * 从Redis全量加载隔离集合，作为发布订阅通知丢失时的兜底
+     */
+    @Scheduled(fixedDelayString = "${rocketmq.quarantine.refresh-interval-ms:30000}")
+    public void refresh() {
+        try {
+            Map<Object, Object> entries = redisTemplate.opsForHash().entries(QUARANTINE_KEY);
+            Map<String, QuarantineEntry> loaded = new HashMap<>(entries.size());
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                loaded.put((String) entry.getKey(), JSON.parseObject((String) entry.getValue(), QuarantineEntry.class));
+            }
+            quarantined.keySet().retainAll(loaded.keySet());
+            quarantined.putAll(loaded);
+        } catch (Exception e) {
+            redisErrors.incrementAndGet();
+            log.warn("加载隔离集合失败，继续使用本地集合, 数量: {}, 错误: {}", quarantined.size(), e.getMessage());
+        }
+    }
+    
+    /**
+     * 隔离统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("size", quarantined.size());
+        stats.put("quarantined", quarantinedCount.get());
+        stats.put("parked", parkedCount.get());
+        stats.put("parkFailures", parkFailures.get());
+        stats.put("released", releasedCount.get());
+        stats.put("rateLimited", rateLimited.get());
+        stats.put("redisErrors", redisErrors.get());
+        return stats;
+    }
+    
+    /**
+     * 停放topic：原topic加配置的后缀
+     */
+    public String parkingTopic(String topic) {
+        return topic + mqProperties.getQuarantine().getParkingTopicSuffix();
+    }
+    
+    private boolean acquireQuota(int maxPerMinute) {
+        if (maxPerMinute <= 0) {
+            return true;
+        }
+        long minute = System.currentTimeMillis() / 60000;
+        long current = quotaMinute.get();
+        if (current != minute && quotaMinute.compareAndSet(current, minute)) {
+            quotaUsed.set(0);
+        }
+        return quotaUsed.incrementAndGet() <= maxPerMinute;
+    }
+    
+    private void save(String key, QuarantineEntry entry) {
+        try {
+            redisTemplate.opsForHash().put(QUARANTINE_KEY, key, JSON.toJSONString(entry));
+        } catch (Exception e) {
+            redisErrors.incrementAndGet();
+            log.warn("保存隔离记录失败, key: {}, 错误: {}", key, e.getMessage());
+        }
+    }
+    
+    private void publish(String key) {
+        try {
+            redisTemplate.convertAndSend(QUARANTINE_CHANNEL, key);
+        } catch (Exception e) {
+            redisErrors.incrementAndGet();
+            log.warn("发布隔离集合变更通知失败, key: {}, 错误: {}", key, e.getMessage());
+        }
+    }
+    
+    /**
+     * 复制消息体、tags、Keys、消息唯一ID和业务属性到新的topic，不复制Broker写入的系统属性和隔离属性
+     */
+    private static Message copyOf(MessageExt msg, String topic) {
+        Message message = new Message(topic, msg.getTags(), msg.getBody());
+        for (Map.Entry<String, String> property : msg.getProperties().entrySet()) {
+            String name = property.getKey();
+            if (MessageConst.STRING_HASH_SET.contains(name) || ORIGIN_TOPIC_PROPERTY.equals(name)
+                    || CONSUMER_GROUP_PROPERTY.equals(name) || FINGERPRINT_PROPERTY.equals(name)) {
+                continue;
+            }
+            MessageAccessor.putProperty(message, name, property.getValue());
+        }
+        if (msg.getKeys() != null) {
+            message.setKeys(msg.getKeys());
+        }
+        String uniqId = MessageClientIDSetter.getUniqID(msg);
+        if (uniqId != null) {
+            MessageAccessor.putProperty(message, MessageConst.PROPERTY_UNIQ_CLIENT_MESSAGE_ID_KEYIDX, uniqId);
+        }
+        return message;
+    }
+    
+    private static String entryKey(String consumerGroup, String topic, String messageKey) {
+        return consumerGroup + ":" + topic + ":" + messageKey;
+    }
+    
+    private static String failureKey(String key, String fingerprint) {
+        return FAILURE_KEY_PREFIX + key + ":" + Integer.toHexString(fingerprint.hashCode());
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.rocketmqdemo.consumer;
+
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+
+/**
+ * 批量消费部分失败时的确认方式
+ * 通过ackIndex确认失败消息之前的消息，只有失败消息及其后的消息重试，已处理成功的消息不会重复投递。
+ * ackIndex只能表示一个前缀，失败消息之后的消息即使未处理也一并重试
+ */
+final class PartialAck {
+    
+    private PartialAck() {
+    }
+    
+    /**
+     * 确认failedIndex之前的消息，failedIndex及之后的消息重试
+     * @param context 消费上下文
+     * @param failedIndex 第一条失败消息在批次中的位置
+     * @return 消费状态，第一条消息就失败时整批重试
+     */
+    static ConsumeConcurrentlyStatus retryFrom(ConsumeConcurrentlyContext context, int failedIndex) {
+        if (failedIndex <= 0) {
+            return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+        }
+        context.setAckIndex(Math.min(context.getAckIndex(), failedIndex - 1));
+        return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.rocketmqdemo.consumer;
+
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 毒消息隔离，位于消费幂等过滤之前
+ * 被隔离的消息直接转发到停放topic并确认，不再交给业务监听器；
+ * 其余消息交给业务监听器，未确认的消息按记录的异常统计失败次数，达到阈值后加入隔离
+ */
+public class QuarantineMessageListener implements MessageListenerConcurrently {
+    
+    private final MessageListenerConcurrently delegate;
+    
+    private final MessageQuarantine quarantine;
+    
+    private final String consumerGroup;
+    
+    private final String cluster;
+    
+    public QuarantineMessageListener(MessageListenerConcurrently delegate, MessageQuarantine quarantine, String consumerGroup, String cluster) {
+        this.delegate = delegate;
+        this.quarantine = quarantine;
+        this.consumerGroup = consumerGroup;
+        this.cluster = cluster;
+    }
+    
+    @Override
+    public ConsumeConcurrentlyStatus consumeMessage(List<MessageExt> msgs, ConsumeConcurrentlyContext context) {
+        if (!quarantine.isEnabled()) {
+            return delegate.consumeMessage(msgs, context);
+        }
+        
+        // 没有被隔离的消息时整批交给业务监听器，不逐条检查
+        List<MessageExt> fresh = msgs;
+        int[] originIndexes = null;
+        int limit = msgs.size();
+        if (quarantine.hasQuarantined()) {
+            fresh = new ArrayList<>(msgs.size());
+            originIndexes = new int[msgs.size()];
+            for (int i = 0; i < msgs.size(); i++) {
+                MessageExt msg = msgs.get(i);
+                if (quarantine.isQuarantined(consumerGroup, msg)) {
+                    // 转发失败时只处理之前的消息，该消息及之后的消息重试
+                    if (!quarantine.park(consumerGroup, cluster, msg)) {
+                        limit = i;
+                        break;
+                    }
+                    continue;
+                }
+                originIndexes[fresh.size()] = i;
+                fresh.add(msg);
+            }
+            if (fresh.isEmpty()) {
+                return limit == msgs.size() ? ConsumeConcurrentlyStatus.CONSUME_SUCCESS : PartialAck.retryFrom(context, limit);
+            }
+        }
+        
+        ConsumeConcurrentlyStatus status;
+        Map<MessageExt, Throwable> errors;
+        ConsumeFailures.begin();
+        try {
+            status = delegate.consumeMessage(fresh, context);
+        } finally {
+            errors = ConsumeFailures.end();
+        }
+        
+        // 未确认的消息中记录了异常的计入失败次数
+        int acked = status == ConsumeConcurrentlyStatus.CONSUME_SUCCESS
+                ? Math.max(-1, Math.min(context.getAckIndex(), fresh.size() - 1)) : -1;
+        if (!errors.isEmpty()) {
+            for (int i = acked + 1; i < fresh.size(); i++) {
+                Throwable error = errors.get(fresh.get(i));
+                if (error != null) {
+                    quarantine.recordFailure(consumerGroup, fresh.get(i), error);
+                }
+            }
+        }
+        if (originIndexes == null) {
+            return status;
+        }
+        
+        // 把ackIndex换算为原批次中的位置，已停放的消息一并确认
+        int failedAt = acked < fresh.size() - 1 ? originIndexes[acked + 1] : limit;
+        if (failedAt >= msgs.size()) {
+            context.setAckIndex(msgs.size() - 1);
+            return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+        }
+        if (failedAt <= 0) {
+            return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+        }
+        context.setAckIndex(failedAt - 1);
+        return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+    }
+}
@@ -1,26 +1,73 @@
 package com.example.rocketmqdemo.consumer;
 
+import com.example.rocketmqdemo.codec.CompressorRegistry;
+import com.example.rocketmqdemo.config.HotPathLogSampler;
+import com.example.rocketmqdemo.config.MQProperties;
+import com.example.rocketmqdemo.config.RocketMQConfig;
+import com.example.rocketmqdemo.model.ConsumerSwitchResult;
+import com.example.rocketmqdemo.model.ConsumerTuning;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
 import org.apache.rocketmq.client.consumer.listener.MessageListener;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
 import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.impl.consumer.DefaultMQPushConsumerImpl;
+import org.apache.rocketmq.client.impl.consumer.ProcessQueue;
+import org.apache.rocketmq.client.impl.factory.MQClientInstance;
+import org.apache.rocketmq.common.ServiceState;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Component
 public class RocketMQConsumerContainer {
     
+    // 开关变更和集群切换日志，异步队列满时也不丢弃
+    private static final Logger switchLog = LoggerFactory.getLogger(HotPathLogSampler.SWITCH_LOGGER);
+    
     private static final String CONSUMER_SWITCH_KEY_PREFIX = "demo-mq:consumer:switch:";
     
+    // 消费者开关变更通知频道
+    public static final String CONSUMER_SWITCH_CHANNEL = "demo-mq:consumer:switch:channel";
+    
+    // 未配置consume-thread-nums时的默认消费线程数
+    private static final int DEFAULT_CONSUME_THREADS = 10;
+    
+    // 切换时检查新消费者就绪状态的间隔
+    private static final long READY_CHECK_INTERVAL_MS = 50;
+    
+    // 队列分配后在该时间内没有消息返回，视为没有积压的空队列
+    private static final long EMPTY_QUEUE_GRACE_MS = 1000;
+    
+    // msg-types中表示顺序消息的类型
+    private static final String ORDERLY_MSG_TYPE = "orderly";
+    
+    // 顺序消息topic未配置consume-batch-max-sizes时的批量大小，批量大于1时队列内才能按分片键并行
+    private static final int ORDERLY_DEFAULT_BATCH_SIZE = 16;
+    
     // 记录已创建的消费者实例，key为actualCluster_consumerGroup_topic
     private final ConcurrentHashMap<String, DefaultMQPushConsumer> consumerInstances = new ConcurrentHashMap<>();
     
+    // 共享客户端实例模式下占用共享实例的消费者，key为actualCluster_consumerGroup，value为consumerKey
+    private final ConcurrentHashMap<String, String> sharedInstanceOwners = new ConcurrentHashMap<>();
+    
     // 记录已订阅的主题，格式：consumerId_topic_tags
     private final ConcurrentHashMap<String, Boolean> subscribedTopics = new ConcurrentHashMap<>();
     
@@ -33,26 +80,115 @@ public class RocketMQConsumerContainer {
     @Autowired
     private Map<String, DefaultMQPushConsumer> clusterConsumers;
     
+    @Autowired
+    private CompressorRegistry compressorRegistry;
+    
+    @Autowired
+    private MQProperties mqProperties;
+    
+    @Autowired
+    private MessageDeduplicator deduplicator;
+    
+    @Autowired
+    private HotPathLogSampler logSampler;
+    
+    @Autowired
+    private MessageQuarantine quarantine;
+    
+    // 每个consumerGroup:topic的切换锁
+    private final ConcurrentHashMap<String, Object> switchLocks = new ConcurrentHashMap<>();
+    
+    // 每个consumerGroup:topic最近一次的切换结果
+    private final ConcurrentHashMap<String, ConsumerSwitchResult> lastSwitchResults = new ConcurrentHashMap<>();
+    
+    // 每个topic的消费者调优参数
+    private final ConcurrentHashMap<String, ConsumerTuning> tuningProfiles = new ConcurrentHashMap<>();
+    
+    // 顺序消息topic，按分片键在队列内并行消费
+    private final Set<String> orderlyTopics = ConcurrentHashMap.newKeySet();
+    
+    // 顺序消息分片线程池，所有顺序消息topic共享
+    private ExecutorService orderlyShardExecutor;
+    
+    /**
+     * 按配置初始化每个topic的调优参数
+     */
+    @PostConstruct
+    public void initTuningProfiles() {
+        MQProperties.Consumer config = mqProperties.getConsumer();
+        if (config == null || config.getTopics() == null) {
+            return;
+        }
+        String[] topics = config.getTopics().split(";");
+        for (int i = 0; i < topics.length; i++) {
+            boolean orderly = ORDERLY_MSG_TYPE.equalsIgnoreCase(valueAt(config.getMsgTypes(), i));
+            if (orderly) {
+                orderlyTopics.add(topics[i].trim());
+            }
+            Integer threads = parseInt(valueAt(config.getConsumeThreadNums(), i));
+            Integer batchSize = parseInt(valueAt(config.getConsumeBatchMaxSizes(), i));
+            if (orderly && batchSize == null) {
+                batchSize = ORDERLY_DEFAULT_BATCH_SIZE;
+            } else if (orderly && batchSize <= 1) {
+                log.warn("顺序消息topic {} 的consume-batch-max-sizes为{}，队列内不会按分片键并行，与普通顺序消费一样逐条串行",
+                        topics[i].trim(), batchSize);
+            }
+            ConsumerTuning tuning = ConsumerTuning.builder()
+                    .consumeThreadMin(threads != null ? threads : DEFAULT_CONSUME_THREADS)
+                    .consumeThreadMax(Math.max(config.getConsumeThreadMax(), threads != null ? threads + 1 : DEFAULT_CONSUME_THREADS + 1))
+                    .consumeMessageBatchMaxSize(batchSize)
+                    .pullBatchSize(parseInt(valueAt(config.getPullBatchSizes(), i)))
+                    .pullThresholdForQueue(parseInt(valueAt(config.getPullThresholdsForQueue(), i)))
+                    .consumeTimeout(parseLong(valueAt(config.getConsumeTimeouts(), i)))
+                    .maxReconsumeTimes(parseInt(valueAt(config.getMaxReconsumeTimes(), i)))
+                    .suspendTimeMillis(parseLong(valueAt(config.getSuspendTimeMillis(), i)))
+                    .build();
+            tuningProfiles.put(topics[i].trim(), tuning);
+        }
+        log.info("消费者调优参数: {}", tuningProfiles);
+        
+        if (!orderlyTopics.isEmpty()) {
+            int shardThreads = config.getOrderlyShardThreads();
+            AtomicInteger threadIndex = new AtomicInteger();
+            orderlyShardExecutor = Executors.newFixedThreadPool(shardThreads, r -> {
+                Thread thread = new Thread(r, "OrderlyShardThread_" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            log.info("顺序消息topic: {}, 分片线程数: {}", orderlyTopics, shardThreads);
+        }
+    }
+    
     /**
      * 订阅主题并消费消息
      */
     public void subscribeAndConsume(String consumerGroup, String topic, String tags, 
                                    MessageListener messageListener, String clusterName) {
+        subscribeAndConsume(consumerGroup, topic, tags, messageListener, clusterName, null);
+    }
+    
+    /**
+     * 订阅主题并消费消息
+     * @param useBusinessCluster 预先读取的消费者开关状态，为null时从Redis读取
+     * @return 消费者是否已在运行
+     */
+    public boolean subscribeAndConsume(String consumerGroup, String topic, String tags, 
+                                      MessageListener messageListener, String clusterName, Boolean useBusinessCluster) {
         try {
             // 参数验证
             if (consumerGroup == null || consumerGroup.trim().isEmpty()) {
                 log.error("消费组ID不能为空");
-                return;
+                return false;
             }
             
             if (topic == null || topic.trim().isEmpty()) {
                 log.error("主题不能为空");
-                return;
+                return false;
             }
             
             if (clusterName == null || clusterName.trim().isEmpty()) {
                 log.error("集群名称不能为空");
-                return;
+                return false;
             }
             
             // 使用默认的tags
@@ -61,12 +197,14 @@ public class RocketMQConsumerContainer {
             // 检查消息监听器是否为空
             if (messageListener == null) {
                 log.error("消息监听器不能为空, consumerGroup: {}, topic: {}", consumerGroup, topic);
-                return;
+                return false;
             }
             
             // 获取消费集群开关状态
-            String value = redisTemplate.opsForValue().get(CONSUMER_SWITCH_KEY_PREFIX + consumerGroup + ":" + topic);
-            boolean useBusinessCluster = Boolean.parseBoolean(value);
+            if (useBusinessCluster == null) {
+                String value = redisTemplate.opsForValue().get(CONSUMER_SWITCH_KEY_PREFIX + consumerGroup + ":" + topic);
+                useBusinessCluster = Boolean.parseBoolean(value);
+            }
             
             // 根据开关状态决定从哪个集群消费
             String actualCluster = useBusinessCluster ? clusterName : "origin";
@@ -84,18 +222,18 @@ public class RocketMQConsumerContainer {
             String subscribeKey = consumerKey + "_" + actualTags;
             if (subscribedTopics.containsKey(subscribeKey)) {
                 log.info("主题已订阅，跳过重复订阅，topic: {}, tags: {}, 集群类型: {}", topic, actualTags, actualCluster);
-                return;
+                return isConsumerRunning(consumerGroup, topic);
             }
             
             // 为每个 consumerGroup+topic 组合创建单独的消费者实例
             DefaultMQPushConsumer consumer = createNewConsumer(actualCluster, consumerGroup, topic);
             if (consumer == null) {
                 log.error("创建消费者实例失败, 集群类型: {}, 消费组: {}", actualCluster, consumerGroup);
-                return;
+                return false;
             }
             
             // 1. 先注册消息监听器
-            consumer.registerMessageListener(messageListener);
+            consumer.registerMessageListener(decorateListener(actualCluster, consumerGroup, topic, messageListener));
             log.info("消息监听器已注册, 集群类型: {}, 消费组: {}", actualCluster, consumerGroup);
             
             // 2. 再订阅主题
@@ -110,10 +248,180 @@ public class RocketMQConsumerContainer {
                 startConsumer(consumer, consumerKey);
             } catch (MQClientException e) {
                 log.error("订阅主题失败, topic: {}, 错误: {}", topic, e.getMessage(), e);
-                consumerInstances.remove(consumerKey);
+                removeConsumerInstance(consumerKey);
             }
+            return isConsumerRunning(consumerGroup, topic);
         } catch (Exception e) {
             log.error("处理消费者初始化时发生未知异常, 消费组: {}, topic: {}, 错误: {}", consumerGroup, topic, e.getMessage(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * 消费组和topic当前集群的消费者是否在运行
+     */
+    public boolean isConsumerRunning(String consumerGroup, String topic) {
+        String currentCluster = getCurrentCluster(consumerGroup, topic);
+        if (currentCluster == null) {
+            return false;
+        }
+        DefaultMQPushConsumer consumer = consumerInstances.get(currentCluster + "_" + consumerGroup + "_" + topic);
+        return consumer != null && consumer.getDefaultMQPushConsumerImpl().getServiceState() == ServiceState.RUNNING;
+    }
+    
+    /**
+     * 获取topic的调优参数，未配置时使用默认线程数
+     */
+    public ConsumerTuning getTuning(String topic) {
+        ConsumerTuning tuning = tuningProfiles.get(topic);
+        if (tuning == null) {
+            tuning = ConsumerTuning.builder()
+                    .consumeThreadMin(DEFAULT_CONSUME_THREADS)
+                    .consumeThreadMax(Math.max(mqProperties.getConsumer().getConsumeThreadMax(), DEFAULT_CONSUME_THREADS + 1))
+                    .build();
+        }
+        return tuning;
+    }
+    
+    /**
+     * 运行时修改topic的调优参数，并应用到该topic正在运行的消费者，无需重启消费者
+     * 消费线程池的最大线程数只在创建消费者时生效，有运行中的消费者时拒绝修改线程数上限，
+     * 消费线程数按运行中消费者实际的线程数上限校验，避免保存并返回一个实际没有生效的参数
+     * @param topic 主题
+     * @param update 需要修改的参数，为null的字段保持不变
+     * @return 修改后的调优参数
+     */
+    public ConsumerTuning updateTuning(String topic, ConsumerTuning update) {
+        ConsumerTuning current = getTuning(topic);
+        ConsumerTuning merged = current.merge(update);
+        if (merged.getConsumeThreadMin() != null && merged.getConsumeThreadMax() != null
+                && merged.getConsumeThreadMin() >= merged.getConsumeThreadMax()) {
+            throw new IllegalArgumentException("消费线程数必须小于消费线程数上限: " + merged.getConsumeThreadMax());
+        }
+        
+        Map<String, DefaultMQPushConsumer> running = new HashMap<>();
+        for (Map.Entry<String, DefaultMQPushConsumer> entry : consumerInstances.entrySet()) {
+            DefaultMQPushConsumer consumer = entry.getValue();
+            if (consumer.getDefaultMQPushConsumerImpl().getSubscriptionInner().containsKey(topic)) {
+                running.put(entry.getKey(), consumer);
+            }
+        }
+        if (!running.isEmpty()) {
+            if (update.getConsumeThreadMax() != null && !update.getConsumeThreadMax().equals(current.getConsumeThreadMax())) {
+                throw new IllegalArgumentException("消费线程数上限只在创建消费者时生效，topic " + topic
+                        + " 有运行中的消费者，不能修改，请先停止消费者或切换集群后再修改");
+            }
+            if (merged.getConsumeThreadMin() != null) {
+                for (Map.Entry<String, DefaultMQPushConsumer> entry : running.entrySet()) {
+                    int threadMax = entry.getValue().getConsumeThreadMax();
+                    if (merged.getConsumeThreadMin() >= threadMax) {
+                        throw new IllegalArgumentException("消费线程数必须小于运行中消费者 " + entry.getKey()
+                                + " 的线程数上限: " + threadMax);
+                    }
+                }
+            }
+        }
+        tuningProfiles.put(topic, merged);
+        
+        for (Map.Entry<String, DefaultMQPushConsumer> entry : running.entrySet()) {
+            try {
+                applyTuning(entry.getValue(), merged, true);
+                log.info("调优参数已应用到运行中的消费者: {}", entry.getKey());
+            } catch (Exception e) {
+                log.error("调优参数应用到消费者失败: {}, 错误: {}", entry.getKey(), e.getMessage(), e);
+            }
+        }
+        log.info("更新消费者调优参数, topic: {}, 参数: {}", topic, merged);
+        return merged;
+    }
+    
+    /**
+     * 将调优参数设置到消费者上
+     * 批量大小、拉取阈值、超时和重试次数在运行时直接读取，修改后立即生效；
+     * 消费线程数在运行时通过调整线程池核心线程数生效，线程数上限只在创建时生效
+     */
+    private void applyTuning(DefaultMQPushConsumer consumer, ConsumerTuning tuning, boolean running) {
+        if (!running && tuning.getConsumeThreadMax() != null) {
+            consumer.setConsumeThreadMax(tuning.getConsumeThreadMax());
+        }
+        if (tuning.getConsumeThreadMin() != null) {
+            consumer.setConsumeThreadMin(tuning.getConsumeThreadMin());
+            if (running) {
+                consumer.updateCorePoolSize(tuning.getConsumeThreadMin());
+            }
+        }
+        if (tuning.getConsumeMessageBatchMaxSize() != null) {
+            consumer.setConsumeMessageBatchMaxSize(tuning.getConsumeMessageBatchMaxSize());
+        }
+        if (tuning.getPullBatchSize() != null) {
+            consumer.setPullBatchSize(tuning.getPullBatchSize());
+        }
+        if (tuning.getPullThresholdForQueue() != null) {
+            consumer.setPullThresholdForQueue(tuning.getPullThresholdForQueue());
+        }
+        if (tuning.getConsumeTimeout() != null) {
+            consumer.setConsumeTimeout(tuning.getConsumeTimeout());
+        }
+        if (tuning.getMaxReconsumeTimes() != null) {
+            consumer.setMaxReconsumeTimes(tuning.getMaxReconsumeTimes());
+        }
+        if (tuning.getSuspendTimeMillis() != null) {
+            consumer.setSuspendCurrentQueueTimeMillis(tuning.getSuspendTimeMillis());
+        }
+    }
+    
+    private static String valueAt(String values, int index) {
+        if (values == null) {
+            return null;
+        }
+        String[] parts = values.split(";");
+        return index < parts.length ? parts[index].trim() : null;
+    }
+    
+    private static Integer parseInt(String value) {
+        try {
+            return value == null || value.isEmpty() ? null : Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            log.warn("无法解析的消费者配置值: {}", value);
+            return null;
+        }
+    }
+    
+    private static Long parseLong(String value) {
+        try {
+            return value == null || value.isEmpty() ? null : Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            log.warn("无法解析的消费者配置值: {}", value);
+            return null;
+        }
+    }
+    
+    /**
+     * 为业务监听器包装消息体解压和消费幂等过滤，业务监听器收到的始终是原始消息体且不会收到重复消息
+     * 最外层为毒消息隔离，被隔离的消息转发到所在集群的停放topic，不进入幂等过滤和业务监听器
+     * 顺序消息topic再包装为按分片键并行的顺序监听器
+     */
+    private MessageListener decorateListener(String cluster, String consumerGroup, String topic, MessageListener messageListener) {
+        if (messageListener instanceof MessageListenerConcurrently) {
+            MessageListenerConcurrently decompressing =
+                    new DecompressingMessageListener((MessageListenerConcurrently) messageListener, compressorRegistry);
+            MessageListenerConcurrently idempotent = new IdempotentMessageListener(decompressing, deduplicator, consumerGroup, logSampler);
+            MessageListenerConcurrently quarantined = new QuarantineMessageListener(idempotent, quarantine, consumerGroup, cluster);
+            if (orderlyTopics.contains(topic)) {
+                return new KeyShardedOrderlyListener(quarantined, orderlyShardExecutor);
+            }
+            return quarantined;
+        }
+        return messageListener;
+    }
+    
+    /**
+     * 关闭顺序消息分片线程池
+     */
+    @PreDestroy
+    public void shutdownShardExecutor() {
+        if (orderlyShardExecutor != null) {
+            orderlyShardExecutor.shutdown();
         }
     }
     
@@ -153,9 +461,17 @@ public class RocketMQConsumerContainer {
                 }
             }
             
-            // 设置消费者线程数
-            consumer.setConsumeThreadMax(20);
-            consumer.setConsumeThreadMin(10);
+            // 共享模式下同一集群的消费者共用客户端实例；同一消费组在一个客户端实例中只能注册一次，
+            // 通过computeIfAbsent原子地选出占用共享实例的消费者，该消费组已在共享实例中消费其他topic时使用独立实例
+            if (mqProperties.isSharedClientInstance()) {
+                String owner = sharedInstanceOwners.computeIfAbsent(actualCluster + "_" + consumerGroup, key -> consumerKey);
+                consumer.setInstanceName(!consumerKey.equals(owner)
+                        ? RocketMQConfig.sharedInstanceName(actualCluster) + "_" + consumerGroup + "_" + topic
+                        : RocketMQConfig.sharedInstanceName(actualCluster));
+            }
+            
+            // 按topic的调优参数设置线程数、批量大小等
+            applyTuning(consumer, getTuning(topic), false);
             
             // 将消费者实例加入缓存
             consumerInstances.put(consumerKey, consumer);
@@ -189,7 +505,7 @@ public class RocketMQConsumerContainer {
             } else {
                 log.error("启动消费者失败, key: {}, 错误: {}", consumerKey, e.getMessage(), e);
                 // 从缓存中移除启动失败的消费者实例
-                consumerInstances.remove(consumerKey);
+                removeConsumerInstance(consumerKey);
             }
         }
     }
@@ -200,7 +516,9 @@ public class RocketMQConsumerContainer {
     public void setConsumerSwitch(String consumerGroup, String topic, boolean enabled) {
         String key = CONSUMER_SWITCH_KEY_PREFIX + consumerGroup + ":" + topic;
         redisTemplate.opsForValue().set(key, String.valueOf(enabled));
-        log.info("设置消费者开关状态, 消费组: {}, topic: {}, 状态: {}", consumerGroup, topic, enabled);
+        // 通知所有节点立即检查并切换，消息格式为 消费组:topic:发布时间戳
+        redisTemplate.convertAndSend(CONSUMER_SWITCH_CHANNEL, consumerGroup + ":" + topic + ":" + System.currentTimeMillis());
+        switchLog.info("设置消费者开关状态, 消费组: {}, topic: {}, 状态: {}", consumerGroup, topic, enabled);
     }
     
     /**
@@ -213,6 +531,61 @@ public class RocketMQConsumerContainer {
         return value != null && Boolean.parseBoolean(value);
     }
     
+    /**
+     * 批量获取消费者开关状态，一次MGET读取所有开关
+     * @param consumerGroups 消费组，与topics一一对应
+     * @param topics 主题
+     * @return 开关状态，与topics一一对应
+     */
+    public List<Boolean> getConsumerSwitches(List<String> consumerGroups, List<String> topics) {
+        List<String> keys = new ArrayList<>(topics.size());
+        for (int i = 0; i < topics.size(); i++) {
+            keys.add(CONSUMER_SWITCH_KEY_PREFIX + consumerGroups.get(i) + ":" + topics.get(i));
+        }
+        List<String> values = redisTemplate.opsForValue().multiGet(keys);
+        List<Boolean> switches = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            String value = values != null && i < values.size() ? values.get(i) : null;
+            // 添加null检查，默认为false（使用原集群）
+            switches.add(value != null && Boolean.parseBoolean(value));
+        }
+        return switches;
+    }
+    
+    /**
+     * 获取消费者当前消费的集群
+     */
+    public String getCurrentCluster(String consumerGroup, String topic) {
+        return consumerClusterStatus.get(consumerGroup + ":" + topic);
+    }
+    
+    /**
+     * 批量初始化消费者开关状态，一次MGET读取所有开关，只对不存在的开关写入默认值
+     * @param consumerGroups 消费组，与topics一一对应
+     * @param topics 主题
+     * @param defaultEnabled 默认状态
+     * @return 开关状态，与topics一一对应
+     */
+    public List<Boolean> initConsumerSwitches(List<String> consumerGroups, List<String> topics, boolean defaultEnabled) {
+        List<String> keys = new ArrayList<>(topics.size());
+        for (int i = 0; i < topics.size(); i++) {
+            keys.add(CONSUMER_SWITCH_KEY_PREFIX + consumerGroups.get(i) + ":" + topics.get(i));
+        }
+        List<String> values = redisTemplate.opsForValue().multiGet(keys);
+        List<Boolean> switches = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            String value = values != null && i < values.size() ? values.get(i) : null;
+            if (value == null) {
+                // 只在键不存在时设置默认值，并发启动的其他节点已写入时以其为准
+                Boolean created = redisTemplate.opsForValue().setIfAbsent(keys.get(i), String.valueOf(defaultEnabled));
+                value = Boolean.TRUE.equals(created) ? String.valueOf(defaultEnabled) : redisTemplate.opsForValue().get(keys.get(i));
+                log.info("初始化消费者开关状态, 消费组: {}, topic: {}, 状态: {}", consumerGroups.get(i), topics.get(i), value);
+            }
+            switches.add(Boolean.parseBoolean(value));
+        }
+        return switches;
+    }
+    
     /**
      * 初始化消费者开关状态（只在开关不存在时设置默认值）
      */
@@ -253,6 +626,7 @@ public class RocketMQConsumerContainer {
         
         // 清空已注册的消费者和订阅记录
         consumerInstances.clear();
+        sharedInstanceOwners.clear();
         subscribedTopics.clear();
         
         log.info("所有消费者实例已关闭");
@@ -268,7 +642,7 @@ public class RocketMQConsumerContainer {
             if (consumerInstances.containsKey(originKey)) {
                 log.info("关闭原始集群消费者: {}", originKey);
                 consumerInstances.get(originKey).shutdown();
-                consumerInstances.remove(originKey);
+                removeConsumerInstance(originKey);
             }
             
             // 业务集群消费者 - 遍历所有业务集群类型
@@ -277,7 +651,7 @@ public class RocketMQConsumerContainer {
                 if (consumerInstances.containsKey(businessKey)) {
                     log.info("关闭业务集群消费者: {}", businessKey);
                     consumerInstances.get(businessKey).shutdown();
-                    consumerInstances.remove(businessKey);
+                    removeConsumerInstance(businessKey);
                 }
             }
             
@@ -297,77 +671,313 @@ public class RocketMQConsumerContainer {
     
     /**
      * 动态切换消费者集群
+     * 切换方式由rocketmq.consumer.switch-mode配置：
+     * BREAK_BEFORE_MAKE先停旧消费者再启动新消费者；MAKE_BEFORE_BREAK先启动新消费者，
+     * 就绪并重叠消费一段时间后再排空、停止旧消费者，新消费者未能分配到队列时保留旧消费者
      * @param consumerGroup 消费组
      * @param topic 主题
      * @param newClusterType 新的集群类型
      * @param messageListener 消息监听器
+     * 同一个consumerGroup:topic的切换串行执行，不同topic的切换互不阻塞
+     * @return 切换结果，包含实测的切换空窗期
      */
-    public void switchConsumerCluster(String consumerGroup, String topic, String newClusterType, MessageListener messageListener) {
+    public ConsumerSwitchResult switchConsumerCluster(String consumerGroup, String topic, String newClusterType, MessageListener messageListener) {
+        String consumerStatusKey = consumerGroup + ":" + topic;
+        synchronized (switchLocks.computeIfAbsent(consumerStatusKey, k -> new Object())) {
+            return doSwitchConsumerCluster(consumerGroup, topic, newClusterType, messageListener);
+        }
+    }
+    
+    private ConsumerSwitchResult doSwitchConsumerCluster(String consumerGroup, String topic, String newClusterType, MessageListener messageListener) {
         String consumerStatusKey = consumerGroup + ":" + topic;
         String currentCluster = consumerClusterStatus.get(consumerStatusKey);
+        MQProperties.Consumer config = mqProperties.getConsumer();
+        ConsumerSwitchMode switchMode = ConsumerSwitchMode.parse(config.getSwitchMode(), ConsumerSwitchMode.BREAK_BEFORE_MAKE);
+        
+        switchLog.info("准备切换消费者集群, consumerGroup: {}, topic: {}, 当前集群: {}, 目标集群: {}, 切换方式: {}", 
+                consumerGroup, topic, currentCluster, newClusterType, switchMode);
         
-        log.info("准备切换消费者集群, consumerGroup: {}, topic: {}, 当前集群: {}, 目标集群: {}", 
-                consumerGroup, topic, currentCluster, newClusterType);
+        long startTime = System.currentTimeMillis();
+        ConsumerSwitchResult.ConsumerSwitchResultBuilder result = ConsumerSwitchResult.builder()
+                .consumerGroup(consumerGroup)
+                .topic(topic)
+                .fromCluster(currentCluster)
+                .toCluster(newClusterType)
+                .switchMode(switchMode.name());
         
         try {
-            // 1. 停止当前集群的消费者
-            if (currentCluster != null) {
-                String oldConsumerKey = currentCluster + "_" + consumerGroup + "_" + topic;
-                if (consumerInstances.containsKey(oldConsumerKey)) {
-                    log.info("停止旧消费者: {}", oldConsumerKey);
-                    consumerInstances.get(oldConsumerKey).shutdown();
-                    consumerInstances.remove(oldConsumerKey);
-                    
-                    // 清理相关的订阅记录
-                    for (String key : new ArrayList<>(subscribedTopics.keySet())) {
-                        if (key.startsWith(oldConsumerKey)) {
-                            subscribedTopics.remove(key);
-                        }
-                    }
-                }
-            }
-            
-            // 2. 启动新集群的消费者
             String newConsumerKey = newClusterType + "_" + consumerGroup + "_" + topic;
             
             // 检查新消费者是否已存在
             if (consumerInstances.containsKey(newConsumerKey)) {
-                log.info("新消费者已存在，无需重复创建: {}", newConsumerKey);
+                switchLog.info("新消费者已存在，无需重复创建: {}", newConsumerKey);
                 consumerClusterStatus.put(consumerStatusKey, newClusterType);
-                return;
+                return recordSwitchResult(result.success(true).ready(true).message("新消费者已存在")
+                        .totalCostMs(System.currentTimeMillis() - startTime).build());
             }
             
-            // 创建新的消费者实例
-            DefaultMQPushConsumer newConsumer = createNewConsumer(newClusterType, consumerGroup, topic);
-            if (newConsumer == null) {
-                log.error("创建新消费者失败, 集群类型: {}, 消费组: {}", newClusterType, consumerGroup);
-                return;
-            }
-            
-            // 注册消息监听器
-            newConsumer.registerMessageListener(messageListener);
-            log.info("为新消费者注册消息监听器, 集群类型: {}, 消费组: {}", newClusterType, consumerGroup);
+            String oldConsumerKey = currentCluster != null ? currentCluster + "_" + consumerGroup + "_" + topic : null;
+            DefaultMQPushConsumer oldConsumer = oldConsumerKey != null ? consumerInstances.get(oldConsumerKey) : null;
             
-            // 订阅主题
-            newConsumer.subscribe(topic, "*");
-            log.info("新消费者订阅主题成功, topic: {}, 集群类型: {}", topic, newClusterType);
+            // 1. 先断后连：停止当前集群的消费者
+            long oldStoppedAt = startTime;
+            if (switchMode == ConsumerSwitchMode.BREAK_BEFORE_MAKE && oldConsumer != null) {
+                switchLog.info("停止旧消费者: {}", oldConsumerKey);
+                oldStoppedAt = System.currentTimeMillis();
+                stopConsumer(oldConsumerKey, oldConsumer);
+            }
             
-            // 记录订阅信息
-            String subscribeKey = newConsumerKey + "_*";
-            subscribedTopics.put(subscribeKey, true);
+            // 2. 启动新集群的消费者并等待就绪
+            long newStartAt = System.currentTimeMillis();
+            DefaultMQPushConsumer newConsumer = startSwitchConsumer(newClusterType, consumerGroup, topic, messageListener);
+            if (newConsumer == null) {
+                return recordSwitchResult(result.success(false).message("创建或启动新集群消费者失败")
+                        .totalCostMs(System.currentTimeMillis() - startTime).build());
+            }
+            boolean ready = awaitConsumerReady(newConsumer, topic, config.getSwitchReadyTimeoutMs());
+            long readyAt = System.currentTimeMillis();
+            int assignedQueues = countAssignedQueues(newConsumer, topic);
+            result.ready(ready).assignedQueues(assignedQueues).readyCostMs(readyAt - newStartAt);
+            if (!ready) {
+                switchLog.warn("新消费者在{}ms内未就绪, key: {}, 已分配队列数: {}", config.getSwitchReadyTimeoutMs(), newConsumerKey, assignedQueues);
+            }
             
-            // 启动新消费者
-            startConsumer(newConsumer, newConsumerKey);
+            // 3. 先连后断：重叠消费一段时间后排空并停止旧消费者
+            long overlapMs = 0;
+            if (switchMode == ConsumerSwitchMode.MAKE_BEFORE_BREAK && oldConsumer != null) {
+                // 就绪但没有分配到队列是消费者多于队列数时的正常分配结果，继续切换；未就绪且没有队列时放弃
+                if (!ready && assignedQueues == 0) {
+                    switchLog.error("新消费者未分配到队列，放弃切换并保留旧消费者, 新消费者: {}, 旧消费者: {}", newConsumerKey, oldConsumerKey);
+                    stopConsumer(newConsumerKey, newConsumer);
+                    return recordSwitchResult(result.success(false)
+                            .message("新集群消费者在" + config.getSwitchReadyTimeoutMs() + "ms内未分配到队列，保留" + currentCluster + "集群消费者")
+                            .totalCostMs(System.currentTimeMillis() - startTime).build());
+                }
+                if (config.getSwitchOverlapMs() > 0) {
+                    Thread.sleep(config.getSwitchOverlapMs());
+                }
+                overlapMs = System.currentTimeMillis() - readyAt;
+                oldStoppedAt = System.currentTimeMillis();
+                drainAndStopConsumer(oldConsumerKey, oldConsumer, config.getSwitchDrainTimeoutMs());
+            }
             
             // 更新集群状态记录
             consumerClusterStatus.put(consumerStatusKey, newClusterType);
             
-            log.info("消费者集群切换成功, consumerGroup: {}, topic: {}, 新集群: {}", 
-                    consumerGroup, topic, newClusterType);
-                    
+            long switchGapMs = Math.max(0, readyAt - oldStoppedAt);
+            switchLog.info("消费者集群切换成功, consumerGroup: {}, topic: {}, 新集群: {}, 切换空窗期: {}ms, 重叠时长: {}ms", 
+                    consumerGroup, topic, newClusterType, switchGapMs, overlapMs);
+            return recordSwitchResult(result.success(true).message("切换成功")
+                    .overlapMs(overlapMs)
+                    .switchGapMs(switchGapMs)
+                    .totalCostMs(System.currentTimeMillis() - startTime)
+                    .build());
         } catch (Exception e) {
-            log.error("切换消费者集群时发生错误, consumerGroup: {}, topic: {}, 错误: {}", 
+            switchLog.error("切换消费者集群时发生错误, consumerGroup: {}, topic: {}, 错误: {}", 
                     consumerGroup, topic, e.getMessage(), e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return recordSwitchResult(result.success(false).message("切换消费者集群时发生错误: " + e.getMessage())
+                    .totalCostMs(System.currentTimeMillis() - startTime).build());
+        }
+    }
+    
+    /**
+     * 当前所有消费者实例，key为 集群_消费组_topic
+     */
+    public Map<String, DefaultMQPushConsumer> getConsumerInstances() {
+        return Collections.unmodifiableMap(consumerInstances);
+    }
+    
+    /**
+     * 获取最近一次切换结果
+     */
+    public ConsumerSwitchResult getLastSwitchResult(String consumerGroup, String topic) {
+        return lastSwitchResults.get(consumerGroup + ":" + topic);
+    }
+    
+    private ConsumerSwitchResult recordSwitchResult(ConsumerSwitchResult result) {
+        result.setSwitchedAt(System.currentTimeMillis());
+        lastSwitchResults.put(result.getConsumerGroup() + ":" + result.getTopic(), result);
+        return result;
+    }
+    
+    /**
+     * 创建、订阅并启动切换目标集群的消费者，失败时返回null
+     */
+    private DefaultMQPushConsumer startSwitchConsumer(String newClusterType, String consumerGroup, String topic,
+                                                      MessageListener messageListener) throws MQClientException {
+        String newConsumerKey = newClusterType + "_" + consumerGroup + "_" + topic;
+        
+        // 创建新的消费者实例
+        DefaultMQPushConsumer newConsumer = createNewConsumer(newClusterType, consumerGroup, topic);
+        if (newConsumer == null) {
+            log.error("创建新消费者失败, 集群类型: {}, 消费组: {}", newClusterType, consumerGroup);
+            return null;
+        }
+        
+        // 注册消息监听器
+        newConsumer.registerMessageListener(decorateListener(newClusterType, consumerGroup, topic, messageListener));
+        log.info("为新消费者注册消息监听器, 集群类型: {}, 消费组: {}", newClusterType, consumerGroup);
+        
+        // 订阅主题
+        newConsumer.subscribe(topic, "*");
+        log.info("新消费者订阅主题成功, topic: {}, 集群类型: {}", topic, newClusterType);
+        
+        // 记录订阅信息
+        String subscribeKey = newConsumerKey + "_*";
+        subscribedTopics.put(subscribeKey, true);
+        
+        // 启动新消费者，启动失败时实例会从缓存中移除
+        startConsumer(newConsumer, newConsumerKey);
+        if (!consumerInstances.containsKey(newConsumerKey)) {
+            subscribedTopics.remove(subscribeKey);
+            return null;
+        }
+        return newConsumer;
+    }
+    
+    /**
+     * 等待消费者就绪：分配到了该topic的队列，并且每个队列都已开始拉取
+     * 队列出现在ProcessQueue表中时已完成路由获取和消费位点计算，拉取请求随即发出；
+     * 拉取时间戳更新、队列中有缓存消息或消费时间戳更新都说明拉取已返回，
+     * 队列在EMPTY_QUEUE_GRACE_MS内都没有消息返回时视为没有积压的空队列
+     */
+    private boolean awaitConsumerReady(DefaultMQPushConsumer consumer, String topic, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        Map<MessageQueue, long[]> observed = new HashMap<>();
+        long nextAllocationCheck = 0;
+        while (System.currentTimeMillis() < deadline) {
+            if (isConsumerReady(consumer, topic, observed)) {
+                return true;
+            }
+            // 没有分配到队列时确认是否是重平衡的正常结果：消费组内消费者多于队列数时本实例不分配队列，同样视为就绪
+            long now = System.currentTimeMillis();
+            if (now >= nextAllocationCheck && countAssignedQueues(consumer, topic) == 0) {
+                if (expectedQueueCount(consumer, topic) == 0) {
+                    switchLog.info("消费组内消费者数多于队列数，新消费者按分配策略不分配队列, consumerGroup: {}, topic: {}",
+                            consumer.getConsumerGroup(), topic);
+                    return true;
+                }
+                nextAllocationCheck = now + EMPTY_QUEUE_GRACE_MS;
+            }
+            Thread.sleep(READY_CHECK_INTERVAL_MS);
+        }
+        return false;
+    }
+    
+    /**
+     * 按Broker上当前的消费者列表和分配策略计算本实例应分配的队列数
+     * @return 应分配的队列数，本实例还未注册到Broker、队列路由未知或查询失败时返回-1
+     */
+    private int expectedQueueCount(DefaultMQPushConsumer consumer, String topic) {
+        try {
+            DefaultMQPushConsumerImpl impl = consumer.getDefaultMQPushConsumerImpl();
+            MQClientInstance client = impl.getmQClientFactory();
+            Set<MessageQueue> mqSet = impl.getRebalanceImpl().getTopicSubscribeInfoTable().get(topic);
+            if (client == null || mqSet == null || mqSet.isEmpty()) {
+                return -1;
+            }
+            List<String> cidAll = client.findConsumerIdList(topic, consumer.getConsumerGroup());
+            if (cidAll == null || !cidAll.contains(client.getClientId())) {
+                return -1;
+            }
+            List<MessageQueue> mqAll = new ArrayList<>(mqSet);
+            Collections.sort(mqAll);
+            Collections.sort(cidAll);
+            return consumer.getAllocateMessageQueueStrategy()
+                    .allocate(consumer.getConsumerGroup(), client.getClientId(), mqAll, cidAll).size();
+        } catch (Exception e) {
+            log.warn("计算新消费者应分配的队列数失败, consumerGroup: {}, topic: {}, 错误: {}",
+                    consumer.getConsumerGroup(), topic, e.getMessage());
+            return -1;
+        }
+    }
+    
+    private boolean isConsumerReady(DefaultMQPushConsumer consumer, String topic, Map<MessageQueue, long[]> observed) {
+        long now = System.currentTimeMillis();
+        boolean assigned = false;
+        for (Map.Entry<MessageQueue, ProcessQueue> entry : processQueues(consumer).entrySet()) {
+            ProcessQueue pq = entry.getValue();
+            if (!topic.equals(entry.getKey().getTopic()) || pq.isDropped()) {
+                continue;
+            }
+            assigned = true;
+            // 首次观察到队列时记录 [观察时间, 拉取时间戳, 消费时间戳]
+            long[] first = observed.computeIfAbsent(entry.getKey(),
+                    mq -> new long[]{now, pq.getLastPullTimestamp(), pq.getLastConsumeTimestamp()});
+            boolean pulled = pq.getMsgCount().get() > 0
+                    || pq.getLastPullTimestamp() > first[1]
+                    || pq.getLastConsumeTimestamp() > first[2]
+                    || now - first[0] >= EMPTY_QUEUE_GRACE_MS;
+            if (!pulled) {
+                return false;
+            }
+        }
+        return assigned;
+    }
+    
+    private int countAssignedQueues(DefaultMQPushConsumer consumer, String topic) {
+        int count = 0;
+        for (Map.Entry<MessageQueue, ProcessQueue> entry : processQueues(consumer).entrySet()) {
+            if (topic.equals(entry.getKey().getTopic()) && !entry.getValue().isDropped()) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    private static Map<MessageQueue, ProcessQueue> processQueues(DefaultMQPushConsumer consumer) {
+        return consumer.getDefaultMQPushConsumerImpl().getRebalanceImpl().getProcessQueueTable();
+    }
+    
+    /**
+     * 暂停旧消费者拉取，等待本地已拉取的消息消费完（最多timeoutMs）后关闭，关闭时持久化消费位点
+     */
+    private void drainAndStopConsumer(String consumerKey, DefaultMQPushConsumer consumer, long timeoutMs) throws InterruptedException {
+        log.info("排空旧消费者: {}", consumerKey);
+        consumer.suspend();
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long pending = pendingMessages(consumer);
+        while (pending > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(READY_CHECK_INTERVAL_MS);
+            pending = pendingMessages(consumer);
+        }
+        if (pending > 0) {
+            log.warn("旧消费者排空超时，剩余{}条未消费的消息将由新消费者重新消费, key: {}", pending, consumerKey);
+        }
+        stopConsumer(consumerKey, consumer);
+    }
+    
+    private static long pendingMessages(DefaultMQPushConsumer consumer) {
+        long pending = 0;
+        for (ProcessQueue pq : processQueues(consumer).values()) {
+            pending += pq.getMsgCount().get();
+        }
+        return pending;
+    }
+    
+    /**
+     * 从实例缓存中移除消费者，并释放其占用的共享客户端实例，同一消费组之后创建的消费者可以重新使用共享实例
+     */
+    private void removeConsumerInstance(String consumerKey) {
+        consumerInstances.remove(consumerKey);
+        sharedInstanceOwners.values().remove(consumerKey);
+    }
+    
+    /**
+     * 关闭消费者并清理实例缓存和订阅记录
+     */
+    private void stopConsumer(String consumerKey, DefaultMQPushConsumer consumer) {
+        consumer.shutdown();
+        removeConsumerInstance(consumerKey);
+        
+        // 清理相关的订阅记录
+        for (String key : new ArrayList<>(subscribedTopics.keySet())) {
+            if (key.startsWith(consumerKey)) {
+                subscribedTopics.remove(key);
+            }
         }
     }
     
@@ -377,8 +987,9 @@ public class RocketMQConsumerContainer {
      * @param topic 主题
      * @param businessClusterType 业务集群类型
      * @param messageListener 消息监听器
+     * @return 发生切换时返回切换结果，未切换时返回null
      */
-    public void checkAndSwitchConsumer(String consumerGroup, String topic, String businessClusterType, MessageListener messageListener) {
+    public ConsumerSwitchResult checkAndSwitchConsumer(String consumerGroup, String topic, String businessClusterType, MessageListener messageListener) {
         try {
             // 获取当前开关状态
             boolean useBusinessCluster = getConsumerSwitch(consumerGroup, topic);
@@ -390,13 +1001,14 @@ public class RocketMQConsumerContainer {
             
             // 如果目标集群与当前集群不同，则进行切换
             if (!targetCluster.equals(currentCluster)) {
-                log.info("检测到开关状态变化，准备切换消费者, consumerGroup: {}, topic: {}, 当前: {}, 目标: {}", 
+                switchLog.info("检测到开关状态变化，准备切换消费者, consumerGroup: {}, topic: {}, 当前: {}, 目标: {}", 
                         consumerGroup, topic, currentCluster, targetCluster);
-                switchConsumerCluster(consumerGroup, topic, targetCluster, messageListener);
+                return switchConsumerCluster(consumerGroup, topic, targetCluster, messageListener);
             }
         } catch (Exception e) {
             log.error("检查消费者开关状态时发生错误, consumerGroup: {}, topic: {}, 错误: {}", 
                     consumerGroup, topic, e.getMessage(), e);
         }
+        return null;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,54 @@
+package com.example.rocketmqdemo.consumer;
+
+import com.example.rocketmqdemo.codec.MessageCodec;
+import com.example.rocketmqdemo.codec.MessageCodecRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.List;
+
+/**
+ * 把消息解码为处理器声明的类型后交给处理器
+ * 消息体类型在启动时解析一次，分发时直接调用处理器，不使用反射
+ */
+@Slf4j
+public class TypedMessageDispatcher<T> implements MessageListenerConcurrently {
+    
+    private final TypedMessageHandler<T> handler;
+    
+    private final Class<T> payloadType;
+    
+    private final MessageCodecRegistry codecRegistry;
+    
+    public TypedMessageDispatcher(TypedMessageHandler<T> handler, Class<T> payloadType, MessageCodecRegistry codecRegistry) {
+        this.handler = handler;
+        this.payloadType = payloadType;
+        this.codecRegistry = codecRegistry;
+    }
+    
+    @Override
+    public ConsumeConcurrentlyStatus consumeMessage(List<MessageExt> msgs, ConsumeConcurrentlyContext context) {
+        for (int i = 0; i < msgs.size(); i++) {
+            MessageExt msg = msgs.get(i);
+            try {
+                // 按消息的contentType属性选择解码器
+                MessageCodec codec = codecRegistry.forContentType(msg.getUserProperty(MessageCodec.CONTENT_TYPE_PROPERTY));
+                handler.handle(codec.decode(msg.getBody(), payloadType), msg);
+            } catch (Exception e) {
+                log.error("处理消息时发生异常, topic: {}, msgId: {}, 处理器: {}", 
+                        msg.getTopic(), msg.getMsgId(), handler.getClass().getSimpleName(), e);
+                ConsumeFailures.record(msg, e);
+                // 确认之前已处理的消息，只重试失败的消息及其后的消息
+                return PartialAck.retryFrom(context, i);
+            }
+        }
+        return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+    }
+    
+    public Class<T> getPayloadType() {
+        return payloadType;
+    }
+}
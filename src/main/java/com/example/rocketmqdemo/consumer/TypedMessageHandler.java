@@ -0,0 +1,19 @@
+package com.example.rocketmqdemo.consumer;
+
+import org.apache.rocketmq.common.message.MessageExt;
+
+/**
+ * 按topic配置的业务消息处理器，消息体在分发前按声明的泛型类型解码
+ * 在rocketmq.consumer.beans中配置处理器的bean名称即可替代通用的消息监听器，
+ * 抛出异常时该消息及同批次中其后的消息稍后重试，之前已处理的消息不会重复投递
+ * @param <T> 消息体类型，如MessageDTO；声明为String时JSON消息体按原文传入
+ */
+public interface TypedMessageHandler<T> {
+    
+    /**
+     * 处理一条消息
+     * @param payload 解码后的消息体
+     * @param msg 原始消息，用于读取topic、tags、msgId等属性
+     */
+    void handle(T payload, MessageExt msg) throws Exception;
+}
@@ -1,17 +1,39 @@
 package com.example.rocketmqdemo.controller;
 
+import com.example.rocketmqdemo.consumer.ConsumerLagService;
+import com.example.rocketmqdemo.consumer.MessageDeduplicator;
+import com.example.rocketmqdemo.consumer.MessageQuarantine;
 import com.example.rocketmqdemo.consumer.RocketMQConsumerContainer;
+import com.example.rocketmqdemo.model.ConsumerSwitchResult;
+import com.example.rocketmqdemo.model.ConsumerTuning;
 import com.example.rocketmqdemo.model.MessageDTO;
+import com.example.rocketmqdemo.model.QuarantineEntry;
+import com.example.rocketmqdemo.model.SendOutcome;
+import com.example.rocketmqdemo.producer.JournalReplayer;
+import com.example.rocketmqdemo.producer.ProducerMetrics;
 import com.example.rocketmqdemo.producer.RocketMQProducer;
+import com.example.rocketmqdemo.producer.SendJournal;
+import com.example.rocketmqdemo.config.ClientFootprintReporter;
 import com.example.rocketmqdemo.config.ConsumerSwitchMonitor;
+import com.example.rocketmqdemo.config.HotPathLogSampler;
+import com.example.rocketmqdemo.config.MQInitService;
+import com.example.rocketmqdemo.config.MQProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import javax.annotation.PostConstruct;
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
 
 @Slf4j
 @RestController
@@ -27,6 +49,44 @@ public class MQController {
     @Autowired
     private ConsumerSwitchMonitor consumerSwitchMonitor;
     
+    @Autowired
+    private SendJournal sendJournal;
+    
+    @Autowired
+    private JournalReplayer journalReplayer;
+    
+    @Autowired
+    private MessageDeduplicator messageDeduplicator;
+    
+    @Autowired
+    private MessageQuarantine messageQuarantine;
+    
+    @Autowired
+    private MQInitService mqInitService;
+    
+    @Autowired
+    private ClientFootprintReporter clientFootprintReporter;
+    
+    @Autowired
+    private ConsumerLagService consumerLagService;
+    
+    @Autowired
+    private MQProperties mqProperties;
+    
+    @Autowired
+    private ProducerMetrics producerMetrics;
+    
+    @Autowired
+    private HotPathLogSampler logSampler;
+    
+    // 异步发送接口的在途请求许可，许可在broker确认或发送失败后释放
+    private Semaphore asyncSendPermits;
+    
+    @PostConstruct
+    public void init() {
+        asyncSendPermits = new Semaphore(mqProperties.getProducer().getMaxAsyncSendRequests());
+    }
+    
     /**
      * 发送消息
      */
@@ -34,43 +94,21 @@ public class MQController {
     public Map<String, Object> sendMessage(
             @PathVariable String topic,
             @RequestParam(required = false) String tag,
-            @RequestParam String cluster,
+            @RequestParam(required = false) String cluster,
+            @RequestParam(required = false) String type,
             @RequestBody(required = false) String content) {
         
         Map<String, Object> result = new HashMap<>();
         
         try {
-            // 构建消息
-            MessageDTO message = MessageDTO.builder()
-                    .id(UUID.randomUUID().toString())
-                    .type(cluster)
-                    .content(content)
-                    .businessId(UUID.randomUUID().toString())
-                    .createTime(LocalDateTime.now())
-                    .build();
+            MessageDTO message = buildMessage(cluster, type, content);
             
-            // 获取生产者开关状态（仅用于日志记录）
+            // 获取生产者开关状态（用于响应），发送日志由生产者按采样输出
             boolean dualWriteEnabled = producer.getProducerSwitch();
             
-            log.info("发送消息到 topic: {}, 双写开关状态: {}, 目标集群: {}", 
-                    topic, dualWriteEnabled, cluster);
-            
-            // 直接使用请求指定的业务集群发送，如果开关打开会自动双写到原集群
-            boolean success = producer.sendMessage(topic, tag, message, cluster);
-            
-            if (success) {
-                result.put("success", true);
-                result.put("message", "消息发送成功");
-                result.put("data", message);
-                // 添加使用的集群信息到响应
-                result.put("targetCluster", cluster);
-                // 添加双写状态到响应
-                result.put("dualWriteEnabled", dualWriteEnabled);
-            } else {
-                result.put("success", false);
-                result.put("message", "消息发送失败，详情请查看日志");
-                result.put("data", message);
-            }
+            // 指定了业务集群时发送到该集群，否则按路由表选择；如果开关打开会自动双写到原集群
+            SendOutcome outcome = producer.sendMessageWithResult(topic, tag, message, cluster);
+            fillSendResult(result, message, outcome, dualWriteEnabled);
         } catch (Exception e) {
             log.error("发送消息失败", e);
             result.put("success", false);
@@ -80,6 +118,119 @@ public class MQController {
         return result;
     }
     
+    /**
+     * 异步发送消息，不占用Web容器线程等待broker确认
+     * 在途请求达到上限时直接返回429，等待超时返回504，超时的请求仍会在后台完成发送
+     */
+    @PostMapping("/send-async/{topic}")
+    public DeferredResult<ResponseEntity<Map<String, Object>>> sendMessageAsync(
+            @PathVariable String topic,
+            @RequestParam(required = false) String tag,
+            @RequestParam(required = false) String cluster,
+            @RequestParam(required = false) String type,
+            @RequestBody(required = false) String content) {
+        
+        // 每个集群的发送都受sendMessageTimeout限制，与同步接口一样多留出一个超时周期
+        long timeoutMs = 2L * mqProperties.getProducer().getSendMessageTimeout();
+        DeferredResult<ResponseEntity<Map<String, Object>>> deferredResult = new DeferredResult<>(timeoutMs);
+        
+        if (!asyncSendPermits.tryAcquire()) {
+            producerMetrics.recordAsyncSendRejected(producer.metricTopic(topic));
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "在途发送请求已达上限，请稍后重试");
+            deferredResult.setResult(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(result));
+            return deferredResult;
+        }
+        
+        MessageDTO message = buildMessage(cluster, type, content);
+        boolean dualWriteEnabled = producer.getProducerSwitch();
+        deferredResult.onTimeout(() -> {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "等待消息发送结果超时");
+            result.put("data", message);
+            deferredResult.setErrorResult(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(result));
+        });
+        
+        CompletableFuture<SendOutcome> future;
+        try {
+            future = producer.sendMessageFanOut(topic, tag, message, cluster);
+        } catch (Exception e) {
+            asyncSendPermits.release();
+            log.error("发送消息失败", e);
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "发送消息失败: " + e.getMessage());
+            deferredResult.setResult(ResponseEntity.ok(result));
+            return deferredResult;
+        }
+        
+        future.whenComplete((outcome, e) -> {
+            asyncSendPermits.release();
+            Map<String, Object> result = new HashMap<>();
+            if (e != null) {
+                log.error("发送消息失败", e);
+                result.put("success", false);
+                result.put("message", "发送消息失败: " + e.getMessage());
+            } else {
+                fillSendResult(result, message, outcome, dualWriteEnabled);
+            }
+            deferredResult.setResult(ResponseEntity.ok(result));
+        });
+        return deferredResult;
+    }
+    
+    /**
+     * 获取异步发送接口的在途请求数
+     */
+    @GetMapping("/send-async/in-flight")
+    public Map<String, Object> getAsyncSendInFlight() {
+        Map<String, Object> result = new HashMap<>();
+        int max = mqProperties.getProducer().getMaxAsyncSendRequests();
+        Map<String, Object> data = new HashMap<>();
+        data.put("inFlight", max - asyncSendPermits.availablePermits());
+        data.put("max", max);
+        
+        result.put("success", true);
+        result.put("message", "获取异步发送在途请求数成功");
+        result.put("data", data);
+        return result;
+    }
+    
+    private MessageDTO buildMessage(String cluster, String type, String content) {
+        return MessageDTO.builder()
+                .id(UUID.randomUUID().toString())
+                .type(type != null ? type : cluster)
+                .content(content)
+                .businessId(UUID.randomUUID().toString())
+                .createTime(LocalDateTime.now())
+                .build();
+    }
+    
+    private void fillSendResult(Map<String, Object> result, MessageDTO message, SendOutcome outcome,
+                                boolean dualWriteEnabled) {
+        // 各集群的发送结果
+        result.put("clusterResults", outcome.getClusterResults());
+        result.put("ackPolicy", outcome.getAckPolicy());
+        
+        if (outcome.isSuccess()) {
+            result.put("success", true);
+            result.put("message", "消息发送成功");
+            result.put("data", message);
+            // 添加使用的集群信息到响应
+            result.put("targetCluster", outcome.getPrimaryCluster());
+            // 添加双写状态到响应
+            result.put("dualWriteEnabled", dualWriteEnabled);
+        } else {
+            result.put("success", false);
+            result.put("message", "消息发送失败，详情请查看日志");
+            result.put("data", message);
+        }
+    }
+    
     /**
      * 设置生产者开关
      */
@@ -166,6 +317,7 @@ public class MQController {
             result.put("success", true);
             result.put("message", "获取消费者开关状态成功");
             result.put("data", enabled);
+            result.put("lastSwitch", consumerContainer.getLastSwitchResult(consumerId, topic));
         } catch (Exception e) {
             log.error("获取消费者开关状态失败", e);
             result.put("success", false);
@@ -204,6 +356,237 @@ public class MQController {
         return result;
     }
     
+    /**
+     * 获取topic的消费者调优参数
+     */
+    @GetMapping("/consumer/tuning/{topic}")
+    public Map<String, Object> getConsumerTuning(@PathVariable String topic) {
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            result.put("success", true);
+            result.put("message", "获取消费者调优参数成功");
+            result.put("data", consumerContainer.getTuning(topic));
+        } catch (Exception e) {
+            log.error("获取消费者调优参数失败", e);
+            result.put("success", false);
+            result.put("message", "获取消费者调优参数失败: " + e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * 修改topic的消费者调优参数，立即应用到运行中的消费者
+     */
+    @PostMapping("/consumer/tuning/{topic}")
+    public Map<String, Object> updateConsumerTuning(
+            @PathVariable String topic,
+            @RequestBody ConsumerTuning tuning) {
+        
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            ConsumerTuning updated = consumerContainer.updateTuning(topic, tuning);
+            
+            result.put("success", true);
+            result.put("message", "修改消费者调优参数成功");
+            result.put("data", updated);
+        } catch (Exception e) {
+            log.error("修改消费者调优参数失败", e);
+            result.put("success", false);
+            result.put("message", "修改消费者调优参数失败: " + e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * 获取生产者路由表
+     */
+    @GetMapping("/producer/routes")
+    public Map<String, Object> getProducerRoutes() {
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            result.put("success", true);
+            result.put("message", "获取生产者路由表成功");
+            result.put("data", producer.getRoutingTable().describe());
+        } catch (Exception e) {
+            log.error("获取生产者路由表失败", e);
+            result.put("success", false);
+            result.put("message", "获取生产者路由表失败: " + e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * 重新加载生产者路由表，请求体可包含topicClusters、routeRules和ackPolicies，未传的字段保持不变
+     */
+    @PostMapping("/producer/routes")
+    public Map<String, Object> reloadProducerRoutes(@RequestBody(required = false) Map<String, String> routes) {
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            String topicClusters = routes == null ? null : routes.get("topicClusters");
+            String routeRules = routes == null ? null : routes.get("routeRules");
+            String ackPolicies = routes == null ? null : routes.get("ackPolicies");
+            
+            result.put("success", true);
+            result.put("message", "重新加载生产者路由表成功");
+            result.put("data", producer.reloadRoutes(topicClusters, routeRules, ackPolicies).describe());
+        } catch (Exception e) {
+            log.error("重新加载生产者路由表失败", e);
+            result.put("success", false);
+            result.put("message", "重新加载生产者路由表失败: " + e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * 获取启动耗时统计
+     */
+    @GetMapping("/startup")
+    public Map<String, Object> getStartupReport() {
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            result.put("success", true);
+            result.put("message", "获取启动耗时统计成功");
+            result.put("data", mqInitService.getStartupReport());
+        } catch (Exception e) {
+            log.error("获取启动耗时统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取启动耗时统计失败: " + e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * 获取每个集群的客户端实例、连接和线程占用
+     */
+    @GetMapping("/footprint")
+    public Map<String, Object> getClientFootprint() {
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            result.put("success", true);
+            result.put("message", "获取客户端占用统计成功");
+            result.put("data", clientFootprintReporter.report());
+        } catch (Exception e) {
+            log.error("获取客户端占用统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取客户端占用统计失败: " + e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * 对比消费组在原始集群和业务集群上的消费堆积，用于判断切换消费者的时机
+     */
+    @GetMapping("/consumer/lag/{consumerId}/{topic}")
+    public Map<String, Object> getConsumerLag(
+            @PathVariable String consumerId,
+            @PathVariable String topic,
+            @RequestParam(required = false) String cluster) {
+        
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            result.put("success", true);
+            result.put("message", "获取消费堆积成功");
+            result.put("data", consumerLagService.compareLag(consumerId, topic, cluster));
+            result.put("currentCluster", consumerContainer.getCurrentCluster(consumerId, topic));
+        } catch (Exception e) {
+            log.error("获取消费堆积失败", e);
+            result.put("success", false);
+            result.put("message", "获取消费堆积失败: " + e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * 获取消费幂等过滤的统计
+     */
+    @GetMapping("/consumer/dedup")
+    public Map<String, Object> getDedupStats() {
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            result.put("success", true);
+            result.put("message", "获取消费幂等过滤统计成功");
+            result.put("data", messageDeduplicator.getStats());
+        } catch (Exception e) {
+            log.error("获取消费幂等过滤统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取消费幂等过滤统计失败: " + e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * 获取被隔离的消息及隔离统计
+     */
+    @GetMapping("/consumer/quarantine")
+    public Map<String, Object> getQuarantine() {
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            result.put("success", true);
+            result.put("message", "获取消息隔离列表成功");
+            result.put("data", messageQuarantine.list());
+            result.put("pendingRedelivery", messageQuarantine.listPendingRedelivery());
+            result.put("stats", messageQuarantine.getStats());
+        } catch (Exception e) {
+            log.error("获取消息隔离列表失败", e);
+            result.put("success", false);
+            result.put("message", "获取消息隔离列表失败: " + e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * 解除消息隔离，默认把停放的消息重新投递到原始topic
+     */
+    @PostMapping("/consumer/quarantine/release")
+    public Map<String, Object> releaseQuarantine(@RequestParam String consumerGroup,
+                                                 @RequestParam String topic,
+                                                 @RequestParam String key,
+                                                 @RequestParam(defaultValue = "true") boolean redeliver) {
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            QuarantineEntry entry = messageQuarantine.release(consumerGroup, topic, key, redeliver);
+            if (entry == null) {
+                result.put("success", false);
+                result.put("message", "未找到隔离记录");
+            } else {
+                result.put("success", true);
+                if (entry.getRedeliveredCluster() != null) {
+                    result.put("message", "已解除隔离并重新投递到集群: " + entry.getRedeliveredCluster());
+                } else if (redeliver) {
+                    result.put("message", "已解除隔离，没有可重新投递的停放消息");
+                } else {
+                    result.put("message", "已解除隔离");
+                }
+                result.put("data", entry);
+            }
+        } catch (Exception e) {
+            log.error("解除消息隔离失败, consumerGroup: {}, topic: {}, key: {}", consumerGroup, topic, key, e);
+            result.put("success", false);
+            result.put("message", "解除消息隔离失败: " + e.getMessage());
+        }
+        
+        return result;
+    }
+    
     /**
      * 手动触发消费者开关检查
      */
@@ -212,10 +595,11 @@ public class MQController {
         Map<String, Object> result = new HashMap<>();
         
         try {
-            consumerSwitchMonitor.triggerManualCheck();
+            List<ConsumerSwitchResult> switchResults = consumerSwitchMonitor.triggerManualCheck();
             
             result.put("success", true);
             result.put("message", "手动触发消费者开关检查成功");
+            result.put("data", switchResults);
         } catch (Exception e) {
             log.error("手动触发消费者开关检查失败", e);
             result.put("success", false);
@@ -282,4 +666,129 @@ public class MQController {
         
         return result;
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 获取发送失败日志状态
+     */
+    @GetMapping("/journal")
+    public Map<String, Object> getJournalStatus() {
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            Map<String, Object> data = new HashMap<>();
+            data.put("enabled", sendJournal.isEnabled());
+            data.put("pendingRecords", sendJournal.getPendingRecords());
+            data.put("pendingBytes", sendJournal.getPendingBytes());
+            data.put("capacityBytes", sendJournal.getCapacity());
+            data.put("appendedRecords", sendJournal.getAppendedRecords());
+            data.put("droppedRecords", sendJournal.getDroppedRecords());
+            data.put("replayedRecords", journalReplayer.getReplayedRecords());
+            data.put("replayRatePerSecond", journalReplayer.getReplayRatePerSecond());
+            data.put("backoffMs", journalReplayer.getBackoffMs());
+            data.put("clusterBackoffMs", journalReplayer.getClusterBackoffMs());
+            
+            result.put("success", true);
+            result.put("message", "获取发送失败日志状态成功");
+            result.put("data", data);
+        } catch (Exception e) {
+            log.error("获取发送失败日志状态失败", e);
+            result.put("success", false);
+            result.put("message", "获取发送失败日志状态失败: " + e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * 立即回放一批发送失败的消息
+     */
+    @PostMapping("/journal/replay")
+    public Map<String, Object> replayJournal() {
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            int replayed = journalReplayer.replayNow();
+            
+            result.put("success", true);
+            result.put("message", "回放发送失败日志成功");
+            result.put("data", replayed);
+        } catch (Exception e) {
+            log.error("回放发送失败日志失败", e);
+            result.put("success", false);
+            result.put("message", "回放发送失败日志失败: " + e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * 获取发送和消费路径的日志采样配置及输出统计
+     */
+    @GetMapping("/logging/sampling")
+    public Map<String, Object> getLogSampling() {
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            result.put("success", true);
+            result.put("message", "获取日志采样配置成功");
+            result.put("data", logSampler.getStatus());
+        } catch (Exception e) {
+            log.error("获取日志采样配置失败", e);
+            result.put("success", false);
+            result.put("message", "获取日志采样配置失败: " + e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * 修改日志采样的全局开关和消息体长度上限，未传的参数保持不变
+     */
+    @PostMapping("/logging/sampling")
+    public Map<String, Object> updateLogSampling(
+            @RequestParam(required = false) Boolean enabled,
+            @RequestParam(required = false) Integer maxBodyLength) {
+        
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            logSampler.updateGlobal(enabled, maxBodyLength);
+            
+            result.put("success", true);
+            result.put("message", "修改日志采样配置成功");
+            result.put("data", logSampler.getStatus());
+        } catch (Exception e) {
+            log.error("修改日志采样配置失败", e);
+            result.put("success", false);
+            result.put("message", "修改日志采样配置失败: " + e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * 修改单个日志类别的采样参数，未传的参数保持不变
+     */
+    @PostMapping("/logging/sampling/{category}")
+    public Map<String, Object> updateLogSamplingCategory(
+            @PathVariable String category,
+            @RequestParam(required = false) Integer sampleRate,
+            @RequestParam(required = false) Integer maxPerSecond) {
+        
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            logSampler.update(category, sampleRate, maxPerSecond);
+            
+            result.put("success", true);
+            result.put("message", "修改日志类别采样参数成功");
+            result.put("data", logSampler.getStatus());
+        } catch (Exception e) {
+            log.error("修改日志类别采样参数失败", e);
+            result.put("success", false);
+            result.put("message", "修改日志类别采样参数失败: " + e.getMessage());
+        }
+        
+        return result;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.rocketmqdemo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClusterSendResult implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * 目标集群
+     */
+    private String cluster;
+    
+    /**
+     * 目标topic（包含tag）
+     */
+    private String destination;
+    
+    /**
+     * 是否发送成功
+     */
+    private boolean success;
+    
+    /**
+     * 消息ID，发送成功时有值
+     */
+    private String msgId;
+    
+    /**
+     * Broker返回的发送状态
+     */
+    private String sendStatus;
+    
+    /**
+     * 失败原因
+     */
+    private String errorMessage;
+    
+    /**
+     * 发送失败后是否已写入本地日志等待回放
+     */
+    private boolean journaled;
+    
+    /**
+     * 发送耗时（毫秒）
+     */
+    private long costMs;
+}
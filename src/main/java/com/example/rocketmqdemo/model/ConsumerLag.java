@@ -0,0 +1,78 @@
+package com.example.rocketmqdemo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConsumerLag implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * 消费组
+     */
+    private String consumerGroup;
+    
+    /**
+     * 主题
+     */
+    private String topic;
+    
+    /**
+     * 集群类型
+     */
+    private String cluster;
+    
+    /**
+     * 集群的NameServer地址
+     */
+    private String nameServer;
+    
+    /**
+     * 查询是否成功
+     */
+    private boolean success;
+    
+    /**
+     * 查询失败原因
+     */
+    private String errorMessage;
+    
+    /**
+     * 所有队列的Broker位点之和
+     */
+    private long brokerOffset;
+    
+    /**
+     * 所有队列的消费位点之和
+     */
+    private long consumerOffset;
+    
+    /**
+     * 总堆积数量
+     */
+    private long totalLag;
+    
+    /**
+     * 消费组在该集群的消费TPS
+     */
+    private double consumeTps;
+    
+    /**
+     * 每个队列的堆积
+     */
+    private List<QueueLag> queues;
+    
+    /**
+     * 查询时间戳，缓存命中时为缓存的查询时间
+     */
+    private long queriedAt;
+}
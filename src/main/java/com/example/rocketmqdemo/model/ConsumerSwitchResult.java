@@ -0,0 +1,87 @@
+package com.example.rocketmqdemo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConsumerSwitchResult implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * 消费组
+     */
+    private String consumerGroup;
+    
+    /**
+     * 主题
+     */
+    private String topic;
+    
+    /**
+     * 切换前的集群，首次启动时为null
+     */
+    private String fromCluster;
+    
+    /**
+     * 切换后的集群
+     */
+    private String toCluster;
+    
+    /**
+     * 切换方式
+     */
+    private String switchMode;
+    
+    /**
+     * 是否切换成功
+     */
+    private boolean success;
+    
+    /**
+     * 切换说明或失败原因
+     */
+    private String message;
+    
+    /**
+     * 新消费者是否在超时前分配到队列并开始拉取
+     */
+    private boolean ready;
+    
+    /**
+     * 新消费者分配到的队列数
+     */
+    private int assignedQueues;
+    
+    /**
+     * 新消费者从启动到就绪的耗时（毫秒）
+     */
+    private long readyCostMs;
+    
+    /**
+     * 新旧消费者同时消费的时长（毫秒）
+     */
+    private long overlapMs;
+    
+    /**
+     * 切换空窗期（毫秒）：旧消费者停止（没有旧消费者时为切换开始）到新消费者就绪之间没有消费者工作的时长
+     */
+    private long switchGapMs;
+    
+    /**
+     * 切换总耗时（毫秒）
+     */
+    private long totalCostMs;
+    
+    /**
+     * 切换完成时间戳
+     */
+    private long switchedAt;
+}
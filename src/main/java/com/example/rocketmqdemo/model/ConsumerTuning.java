@@ -0,0 +1,93 @@
+package com.example.rocketmqdemo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 消费者调优参数，按topic配置
+ * 通过接口修改时，为null的字段保持不变
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConsumerTuning implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * 消费线程数（核心线程数），运行时可调整，但必须小于consumeThreadMax
+     */
+    private Integer consumeThreadMin;
+    
+    /**
+     * 消费线程数上限，只在创建消费者时生效
+     */
+    private Integer consumeThreadMax;
+    
+    /**
+     * 每次交给监听器的最大消息数
+     */
+    private Integer consumeMessageBatchMaxSize;
+    
+    /**
+     * 每次从Broker拉取的最大消息数
+     */
+    private Integer pullBatchSize;
+    
+    /**
+     * 每个队列本地缓存的最大消息数，超过后暂停拉取
+     */
+    private Integer pullThresholdForQueue;
+    
+    /**
+     * 消费超时时间（分钟）
+     */
+    private Long consumeTimeout;
+    
+    /**
+     * 最大重试次数
+     */
+    private Integer maxReconsumeTimes;
+    
+    /**
+     * 顺序消费失败后的暂停时间（毫秒）
+     */
+    private Long suspendTimeMillis;
+    
+    /**
+     * 用非空字段覆盖当前参数，返回新的参数对象
+     */
+    public ConsumerTuning merge(ConsumerTuning update) {
+        ConsumerTuningBuilder builder = toBuilder();
+        if (update.getConsumeThreadMin() != null) {
+            builder.consumeThreadMin(update.getConsumeThreadMin());
+        }
+        if (update.getConsumeThreadMax() != null) {
+            builder.consumeThreadMax(update.getConsumeThreadMax());
+        }
+        if (update.getConsumeMessageBatchMaxSize() != null) {
+            builder.consumeMessageBatchMaxSize(update.getConsumeMessageBatchMaxSize());
+        }
+        if (update.getPullBatchSize() != null) {
+            builder.pullBatchSize(update.getPullBatchSize());
+        }
+        if (update.getPullThresholdForQueue() != null) {
+            builder.pullThresholdForQueue(update.getPullThresholdForQueue());
+        }
+        if (update.getConsumeTimeout() != null) {
+            builder.consumeTimeout(update.getConsumeTimeout());
+        }
+        if (update.getMaxReconsumeTimes() != null) {
+            builder.maxReconsumeTimes(update.getMaxReconsumeTimes());
+        }
+        if (update.getSuspendTimeMillis() != null) {
+            builder.suspendTimeMillis(update.getSuspendTimeMillis());
+        }
+        return builder.build();
+    }
+}
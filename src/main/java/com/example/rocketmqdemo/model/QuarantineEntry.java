@@ -0,0 +1,85 @@
+package com.example.rocketmqdemo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 被隔离的消息，同一错误指纹连续失败达到阈值后加入隔离，之后的投递直接转发到停放topic
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QuarantineEntry implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * 消费组
+     */
+    private String consumerGroup;
+    
+    /**
+     * 原始topic
+     */
+    private String topic;
+    
+    /**
+     * 消息键，与消费幂等的去重键一致（消息Keys或消息唯一ID）
+     */
+    private String messageKey;
+    
+    /**
+     * 最近一次失败的消息ID
+     */
+    private String msgId;
+    
+    /**
+     * 错误指纹：根异常类型及抛出位置
+     */
+    private String fingerprint;
+    
+    /**
+     * 最近一次失败的错误信息
+     */
+    private String errorMessage;
+    
+    /**
+     * 加入隔离时同一错误指纹的失败次数
+     */
+    private long failures;
+    
+    /**
+     * 加入隔离的时间戳
+     */
+    private long quarantinedAt;
+    
+    /**
+     * 停放消息所在的集群
+     */
+    private String parkedCluster;
+    
+    /**
+     * 停放消息的消息ID
+     */
+    private String parkedMsgId;
+    
+    /**
+     * 转发到停放topic的次数
+     */
+    private long parkedCount;
+    
+    /**
+     * 最近一次转发到停放topic的时间戳
+     */
+    private long lastParkedAt;
+    
+    /**
+     * 解除隔离时停放消息重新投递到的集群，没有重新投递时为null
+     */
+    private String redeliveredCluster;
+}
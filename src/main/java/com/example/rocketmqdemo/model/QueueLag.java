@@ -0,0 +1,42 @@
+package com.example.rocketmqdemo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueueLag implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Broker名称
+     */
+    private String brokerName;
+    
+    /**
+     * 队列ID
+     */
+    private int queueId;
+    
+    /**
+     * Broker上的最大位点
+     */
+    private long brokerOffset;
+    
+    /**
+     * 消费组已提交的位点
+     */
+    private long consumerOffset;
+    
+    /**
+     * 堆积数量
+     */
+    private long lag;
+}
@@ -0,0 +1,49 @@
+package com.example.rocketmqdemo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SendOutcome implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * 目标topic（包含tag）
+     */
+    private String destination;
+    
+    /**
+     * 请求指定的目标集群
+     */
+    private String primaryCluster;
+    
+    /**
+     * 本次发送使用的确认策略
+     */
+    private String ackPolicy;
+    
+    /**
+     * 按确认策略判定的整体发送结果
+     */
+    private boolean success;
+    
+    /**
+     * 已完成的各集群发送结果，key为集群名称
+     */
+    private Map<String, ClusterSendResult> clusterResults;
+    
+    /**
+     * 返回时仍在后台发送中的集群
+     */
+    private List<String> pendingClusters;
+}
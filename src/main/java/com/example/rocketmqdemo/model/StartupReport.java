@@ -0,0 +1,54 @@
+package com.example.rocketmqdemo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StartupReport implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * 消费者启动并发度
+     */
+    private int parallelism;
+    
+    /**
+     * 初始化生产者耗时（毫秒）
+     */
+    private long producerCostMs;
+    
+    /**
+     * 批量读取消费者开关耗时（毫秒）
+     */
+    private long switchPrefetchCostMs;
+    
+    /**
+     * 每个consumerGroup:topic的启动耗时（毫秒）
+     */
+    private Map<String, Long> topicCostMs;
+    
+    /**
+     * 启动失败的consumerGroup:topic
+     */
+    private List<String> failedTopics;
+    
+    /**
+     * 所有消费者是否都已运行
+     */
+    private boolean allConsumersRunning;
+    
+    /**
+     * 启动总耗时（毫秒）
+     */
+    private long totalCostMs;
+}
@@ -0,0 +1,36 @@
+package com.example.rocketmqdemo.producer;
+
+/**
+ * 双写发送的确认策略
+ */
+public enum AckPolicy {
+    
+    /**
+     * 只等待目标集群确认，原始集群双写在后台完成，失败不影响发送结果
+     */
+    PRIMARY_ONLY,
+    
+    /**
+     * 等待所有集群确认，全部成功才算发送成功
+     */
+    BOTH,
+    
+    /**
+     * 任意一个集群确认成功即返回成功
+     */
+    FIRST_SUCCESS;
+    
+    /**
+     * 解析配置中的策略名称，无法识别时返回默认策略
+     */
+    public static AckPolicy parse(String value, AckPolicy defaultPolicy) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultPolicy;
+        }
+        try {
+            return AckPolicy.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultPolicy;
+        }
+    }
+}
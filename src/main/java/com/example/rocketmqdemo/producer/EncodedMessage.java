@@ -0,0 +1,179 @@
+package com.example.rocketmqdemo.producer;
+
+import com.example.rocketmqdemo.codec.Compressor;
+import com.example.rocketmqdemo.codec.MessageCodec;
+import com.example.rocketmqdemo.model.MessageDTO;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageConst;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 已编码的消息，消息体只序列化一次，双写时所有目标集群共享同一份消息体
+ * 每次发送通过{@link #toRocketMessage()}生成新的RocketMQ消息对象，
+ * 因为客户端发送时会修改消息的属性，同一个消息对象不能被多个生产者并发使用
+ */
+public final class EncodedMessage {
+    
+    /**
+     * 消息属性中的分片键
+     */
+    public static final String SHARDING_KEY_PROPERTY = "shardingKey";
+    
+    private final String destination;
+    
+    private final String topic;
+    
+    private final String tags;
+    
+    private final byte[] body;
+    
+    private final Map<String, String> properties;
+    
+    private final String uniqId;
+    
+    private EncodedMessage(String destination, String topic, String tags, byte[] body, Map<String, String> properties, String uniqId) {
+        this.destination = destination;
+        this.topic = topic;
+        this.tags = tags;
+        this.body = body;
+        this.properties = Collections.unmodifiableMap(properties);
+        this.uniqId = uniqId;
+    }
+    
+    /**
+     * 使用指定的编解码器编码消息，并把内容类型写入消息属性
+     * @param codec 编解码器
+     * @param destination 目标topic，格式为topic:tag
+     * @param payload 消息内容
+     * @return 编码后的消息
+     */
+    public static EncodedMessage encode(MessageCodec codec, String destination, Object payload) {
+        if (payload == null) {
+            throw new IllegalArgumentException("消息内容不能为空");
+        }
+        String[] parts = destination.split(":", 2);
+        String topic = parts[0];
+        String tags = parts.length > 1 ? parts[1] : "";
+        
+        byte[] body;
+        Map<String, String> properties = new HashMap<>();
+        if (payload instanceof byte[]) {
+            body = (byte[]) payload;
+        } else {
+            body = codec.encode(payload);
+            properties.put(MessageCodec.CONTENT_TYPE_PROPERTY, codec.contentType());
+        }
+        
+        // MessageDTO的id作为消息Keys，消费端按Keys去重
+        if (payload instanceof MessageDTO && ((MessageDTO) payload).getId() != null) {
+            properties.put(MessageConst.PROPERTY_KEYS, ((MessageDTO) payload).getId());
+        }
+        
+        // 预先生成消息唯一ID，各集群收到的消息ID相同，便于消费端去重
+        String uniqId = MessageClientIDSetter.createUniqID();
+        properties.put(MessageConst.PROPERTY_UNIQ_CLIENT_MESSAGE_ID_KEYIDX, uniqId);
+        
+        return new EncodedMessage(destination, topic, tags, body, properties, uniqId);
+    }
+    
+    /**
+     * 消息体超过阈值时压缩，并在消息属性中记录压缩算法和原始长度
+     * 压缩后没有变小时保留原消息体
+     * @param compressor 压缩算法，为null时不压缩
+     * @param threshold 压缩阈值（字节）
+     * @return 压缩后的消息，不需要压缩时返回自身
+     */
+    public EncodedMessage compress(Compressor compressor, int threshold) {
+        if (compressor == null || body.length <= threshold) {
+            return this;
+        }
+        byte[] compressed = compressor.compress(body);
+        if (compressed.length >= body.length) {
+            return this;
+        }
+        Map<String, String> compressedProperties = new HashMap<>(properties);
+        compressedProperties.put(Compressor.COMPRESSION_PROPERTY, compressor.name());
+        compressedProperties.put(Compressor.RAW_LENGTH_PROPERTY, String.valueOf(body.length));
+        return new EncodedMessage(destination, topic, tags, compressed, compressedProperties, uniqId);
+    }
+    
+    /**
+     * 设置顺序消息的分片键，分片键写入消息属性，消费端据此在队列内按分片键并行消费
+     * @param shardingKey 分片键
+     * @return 带分片键的消息
+     */
+    public EncodedMessage withShardingKey(String shardingKey) {
+        Map<String, String> shardedProperties = new HashMap<>(properties);
+        shardedProperties.put(SHARDING_KEY_PROPERTY, shardingKey);
+        return new EncodedMessage(destination, topic, tags, body, shardedProperties, uniqId);
+    }
+    
+    /**
+     * 从发送失败日志中恢复已编码的消息，保留原有的消息唯一ID
+     */
+    static EncodedMessage restore(String destination, byte[] body, Map<String, String> properties) {
+        String[] parts = destination.split(":", 2);
+        String topic = parts[0];
+        String tags = parts.length > 1 ? parts[1] : "";
+        String uniqId = properties.get(MessageConst.PROPERTY_UNIQ_CLIENT_MESSAGE_ID_KEYIDX);
+        return new EncodedMessage(destination, topic, tags, body, new HashMap<>(properties), uniqId);
+    }
+    
+    /**
+     * 生成一个新的RocketMQ消息对象，与其他副本共享消息体字节数组
+     */
+    public Message toRocketMessage() {
+        Message message = new Message(topic, tags, body);
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            MessageAccessor.putProperty(message, entry.getKey(), entry.getValue());
+        }
+        return message;
+    }
+    
+    /**
+     * 消息唯一ID，与发送成功后{@link SendResult#getMsgId()}一致
+     */
+    public String getUniqId() {
+        return uniqId;
+    }
+    
+    /**
+     * 顺序消息的分片键，非顺序消息为null
+     */
+    public String getShardingKey() {
+        return properties.get(SHARDING_KEY_PROPERTY);
+    }
+    
+    /**
+     * 目标topic，格式为topic:tag
+     */
+    public String getDestination() {
+        return destination;
+    }
+    
+    public String getTopic() {
+        return topic;
+    }
+    
+    public String getTags() {
+        return tags;
+    }
+    
+    public int getBodyLength() {
+        return body.length;
+    }
+    
+    byte[] getBody() {
+        return body;
+    }
+    
+    Map<String, String> getProperties() {
+        return properties;
+    }
+}
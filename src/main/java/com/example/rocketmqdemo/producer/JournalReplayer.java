@@ -0,0 +1,215 @@
+package com.example.rocketmqdemo.producer;
+
+import com.example.rocketmqdemo.config.MQProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 发送失败日志的回放任务
+ * 按顺序批量重新发送日志中的消息，某个集群发送失败时只有该集群按指数退避等待恢复，
+ * 退避期间该集群的记录移动到日志末尾，其他集群的记录继续回放；
+ * 回放在单独的线程中执行，集群故障时同步发送等待超时不会占用Spring的调度线程
+ */
+@Slf4j
+@Component
+public class JournalReplayer {
+    
+    // 回放速率的统计窗口（毫秒）
+    private static final long RATE_WINDOW_MS = 10000;
+    
+    @Autowired
+    private MQProperties mqProperties;
+    
+    @Autowired
+    private SendJournal sendJournal;
+    
+    @Autowired
+    private RocketMQProducer rocketMQProducer;
+    
+    // 累计回放成功的消息数
+    private final AtomicLong replayedRecords = new AtomicLong();
+    
+    // 每个集群的退避状态，集群恢复后移除
+    private final ConcurrentHashMap<String, ClusterBackoff> backoffs = new ConcurrentHashMap<>();
+    
+    private long windowStart = System.currentTimeMillis();
+    
+    private long windowReplayed = 0;
+    
+    private volatile double replayRatePerSecond = 0;
+    
+    private ScheduledExecutorService replayExecutor;
+    
+    @PostConstruct
+    public void start() {
+        long interval = Math.max(1, mqProperties.getJournal().getReplayIntervalMs());
+        replayExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "JournalReplayThread");
+            thread.setDaemon(true);
+            return thread;
+        });
+        replayExecutor.scheduleWithFixedDelay(this::replay, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        replayExecutor.shutdown();
+        replayExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * 定期回放日志中的消息，按rocketmq.journal.replay-interval-ms间隔在回放线程中执行
+     */
+    public synchronized void replay() {
+        if (!sendJournal.isEnabled()) {
+            return;
+        }
+        try {
+            int replayed = 0;
+            if (sendJournal.getPendingRecords() > 0) {
+                replayed = replayBatch();
+            }
+            updateRate(replayed);
+            sendJournal.flush();
+        } catch (Exception e) {
+            log.error("回放发送失败日志时发生错误: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 回放一批消息，退避中的集群的记录移动到日志末尾，日志已满无法移动时停止本批
+     * 集群发送失败后立即进入退避，本批中该集群的其余记录不再发送，每批每个集群最多等待一次发送超时
+     * @return 本批回放成功的消息数
+     */
+    private int replayBatch() {
+        List<SendJournal.JournalRecord> records = sendJournal.peek(mqProperties.getJournal().getReplayBatchSize());
+        int replayed = 0;
+        try {
+            for (SendJournal.JournalRecord record : records) {
+                String cluster = record.getCluster();
+                ClusterBackoff backoff = backoffs.get(cluster);
+                if (backoff != null && System.currentTimeMillis() < backoff.nextReplayTime) {
+                    if (!sendJournal.requeue(record)) {
+                        return replayed;
+                    }
+                    continue;
+                }
+                try {
+                    SendResult result = rocketMQProducer.resend(cluster, record.getMessage());
+                    if (result.getSendStatus() != SendStatus.SEND_OK) {
+                        // 消息已被Broker接收，只是刷盘或同步从节点未完成，不再重复发送
+                        log.warn("回放消息状态异常, 集群: {}, topic: {}, status: {}",
+                                cluster, record.getMessage().getDestination(), result.getSendStatus());
+                    }
+                } catch (IllegalArgumentException e) {
+                    // 集群已不存在，消息无法回放，跳过以免阻塞后续记录
+                    log.error("回放消息的集群不可用, 丢弃该记录, 集群: {}, topic: {}, msgId: {}",
+                            cluster, record.getMessage().getDestination(), record.getMessage().getUniqId());
+                } catch (Exception e) {
+                    onReplayFailure(record, e);
+                    if (!sendJournal.requeue(record)) {
+                        return replayed;
+                    }
+                    continue;
+                }
+                sendJournal.commit(record);
+                replayed++;
+                if (backoff != null && backoffs.remove(cluster, backoff)) {
+                    log.info("{}集群发送失败日志回放恢复, 剩余待回放记录: {}", cluster, sendJournal.getPendingRecords());
+                }
+            }
+            return replayed;
+        } finally {
+            replayedRecords.addAndGet(replayed);
+        }
+    }
+    
+    private void onReplayFailure(SendJournal.JournalRecord record, Exception e) {
+        long interval = mqProperties.getJournal().getReplayIntervalMs();
+        ClusterBackoff backoff = backoffs.computeIfAbsent(record.getCluster(), key -> new ClusterBackoff());
+        backoff.backoffMs = backoff.backoffMs == 0 ? interval : Math.min(backoff.backoffMs * 2, mqProperties.getJournal().getMaxBackoffMs());
+        backoff.nextReplayTime = System.currentTimeMillis() + backoff.backoffMs;
+        log.warn("回放消息失败, {}集群{}ms后重试, topic: {}, 错误: {}",
+                record.getCluster(), backoff.backoffMs, record.getMessage().getDestination(), e.getMessage());
+    }
+    
+    private void updateRate(int replayed) {
+        windowReplayed += replayed;
+        long now = System.currentTimeMillis();
+        long elapsed = now - windowStart;
+        if (elapsed >= RATE_WINDOW_MS) {
+            replayRatePerSecond = windowReplayed * 1000.0 / elapsed;
+            windowStart = now;
+            windowReplayed = 0;
+        }
+    }
+    
+    /**
+     * 立即回放一批消息，忽略当前退避时间
+     * @return 本次回放成功的消息数
+     */
+    public synchronized int replayNow() {
+        if (!sendJournal.isEnabled()) {
+            return 0;
+        }
+        for (ClusterBackoff backoff : backoffs.values()) {
+            backoff.nextReplayTime = 0;
+        }
+        return replayBatch();
+    }
+    
+    public long getReplayedRecords() {
+        return replayedRecords.get();
+    }
+    
+    public double getReplayRatePerSecond() {
+        return replayRatePerSecond;
+    }
+    
+    /**
+     * 当前最长的集群退避时间，0表示没有集群在退避
+     */
+    public long getBackoffMs() {
+        long max = 0;
+        for (ClusterBackoff backoff : backoffs.values()) {
+            max = Math.max(max, backoff.backoffMs);
+        }
+        return max;
+    }
+    
+    /**
+     * 每个退避中的集群的当前退避时间
+     */
+    public Map<String, Long> getClusterBackoffMs() {
+        Map<String, Long> result = new HashMap<>();
+        for (Map.Entry<String, ClusterBackoff> entry : backoffs.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().backoffMs);
+        }
+        return result;
+    }
+    
+    /**
+     * 单个集群的退避状态
+     */
+    private static class ClusterBackoff {
+        
+        private volatile long backoffMs;
+        
+        // 退避结束前不回放该集群的记录
+        private volatile long nextReplayTime;
+    }
+}
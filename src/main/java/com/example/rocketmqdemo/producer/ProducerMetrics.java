@@ -0,0 +1,124 @@
+package com.example.rocketmqdemo.producer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 生产者发送指标，按集群、topic统计发送耗时、发送量和失败原因，以及双写两个集群结果不一致的次数
+ * 发送速率由Prometheus对发送耗时的计数求rate得到
+ */
+@Component
+public class ProducerMetrics {
+    
+    private static final String SEND_TIMER = "demo.mq.producer.send";
+    
+    private static final String SEND_FAILURES = "demo.mq.producer.send.failures";
+    
+    private static final String DUAL_WRITE_DIVERGENCE = "demo.mq.producer.dual.write.divergence";
+    
+    private static final String ASYNC_SEND_REJECTED = "demo.mq.producer.async.rejected";
+    
+    /**
+     * 请求指定了不存在的集群时使用的集群标签
+     */
+    public static final String UNKNOWN_CLUSTER = "unknown";
+    
+    /**
+     * 路由表中未配置的topic使用的topic标签，避免请求中任意的topic产生无限多的指标
+     */
+    public static final String UNROUTED_TOPIC = "unrouted";
+    
+    /**
+     * 双写结果不一致的方向
+     */
+    public enum Divergence {
+        
+        /**
+         * 目标集群成功，原始集群失败
+         */
+        PRIMARY_ONLY,
+        
+        /**
+         * 原始集群成功，目标集群失败
+         */
+        ORIGIN_ONLY
+    }
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    // 发送路径上缓存已注册的指标，避免每次发送都构建指标ID
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    
+    /**
+     * 记录一次发送结果
+     * @param cluster 集群，只能是已配置的集群或{@link #UNKNOWN_CLUSTER}
+     * @param topic 主题（不含tag），只能是已配置的topic或{@link #UNROUTED_TOPIC}
+     * @param success 是否成功
+     * @param costMs 发送耗时
+     * @param reason 失败原因：非SEND_OK的SendStatus名称或异常类名，成功时为null
+     */
+    public void recordSend(String cluster, String topic, boolean success, long costMs, String reason) {
+        String result = success ? "success" : "failed";
+        timers.computeIfAbsent(cluster + ":" + topic + ":" + result, key -> Timer.builder(SEND_TIMER)
+                .description("消息发送耗时")
+                .tag("cluster", cluster)
+                .tag("topic", topic)
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(meterRegistry))
+                .record(costMs, TimeUnit.MILLISECONDS);
+        if (!success) {
+            String failureReason = reason != null ? reason : "UNKNOWN";
+            counter(SEND_FAILURES, "消息发送失败次数", "cluster", cluster, "topic", topic, "reason", failureReason).increment();
+        }
+    }
+    
+    /**
+     * 记录一次双写结果不一致
+     * @param cluster 目标集群
+     * @param topic 主题（不含tag）
+     * @param divergence 不一致的方向
+     */
+    public void recordDivergence(String cluster, String topic, Divergence divergence) {
+        counter(DUAL_WRITE_DIVERGENCE, "双写结果不一致次数", "cluster", cluster, "topic", topic,
+                "direction", divergence.name().toLowerCase()).increment();
+    }
+    
+    /**
+     * 记录一次异步发送接口因在途请求已满被拒绝
+     * @param topic 主题（不含tag）
+     */
+    public void recordAsyncSendRejected(String topic) {
+        counter(ASYNC_SEND_REJECTED, "异步发送接口拒绝次数", "topic", topic).increment();
+    }
+    
+    /**
+     * 异常对应的失败原因
+     */
+    public static String reasonOf(Throwable e) {
+        // CompletableFuture包装的异常取实际原因
+        Throwable cause = e;
+        while (cause.getCause() != null && cause instanceof CompletionException) {
+            cause = cause.getCause();
+        }
+        return cause.getClass().getSimpleName();
+    }
+    
+    private Counter counter(String name, String description, String... tags) {
+        String key = name + ":" + String.join(":", tags);
+        return counters.computeIfAbsent(key, k -> Counter.builder(name)
+                .description(description)
+                .tags(tags)
+                .register(meterRegistry));
+    }
+}
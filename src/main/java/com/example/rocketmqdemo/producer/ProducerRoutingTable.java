@@ -0,0 +1,306 @@
+package com.example.rocketmqdemo.producer;
+
+import com.example.rocketmqdemo.model.MessageDTO;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * 生产者路由表，启动时按rocketmq.producer配置构建，构建后不可修改
+ * 发送路径只做一次topic查找即可得到目标集群的模板、在途窗口、确认策略和是否顺序消息，不再拼接模板名称；
+ * 配置变更时重新构建整张表并替换引用，发送中的请求继续使用旧表
+ */
+public final class ProducerRoutingTable {
+    
+    /**
+     * 原始集群名称
+     */
+    public static final String ORIGIN_CLUSTER = "origin";
+    
+    // 模板bean名称的后缀，如productRocketMQTemplate
+    private static final String TEMPLATE_BEAN_SUFFIX = "RocketMQTemplate";
+    
+    // msg-types中表示顺序消息的类型
+    private static final String ORDERLY_MSG_TYPE = "orderly";
+    
+    private final Map<String, Route> routes;
+    
+    private final Map<String, ClusterTarget> clusters;
+    
+    private final ClusterTarget origin;
+    
+    private final List<String> problems;
+    
+    private final long builtAt;
+    
+    private ProducerRoutingTable(Map<String, Route> routes, Map<String, ClusterTarget> clusters, List<String> problems) {
+        this.routes = Collections.unmodifiableMap(routes);
+        this.clusters = Collections.unmodifiableMap(clusters);
+        this.origin = clusters.get(ORIGIN_CLUSTER);
+        this.problems = Collections.unmodifiableList(problems);
+        this.builtAt = System.currentTimeMillis();
+    }
+    
+    /**
+     * 构建路由表，配置中引用了不存在的集群或无法识别的确认策略时记录到{@link #getProblems()}，对应的配置不生效
+     * @param topics topic列表
+     * @param topicClusters 每个topic的默认集群
+     * @param msgTypes 每个topic的消息类型
+     * @param ackPolicies 每个topic的双写确认策略
+     * @param routeRules 按tag或消息类型覆盖默认集群的规则，格式为topic:tag=cluster或topic#type=cluster
+     * @param originTemplate 原始集群模板
+     * @param templates 业务集群模板，key为集群名称或模板bean名称
+     * @param windowFactory 按集群名称获取在途窗口，重新构建时复用同一个窗口
+     * @return 路由表
+     */
+    public static ProducerRoutingTable build(String topics, String topicClusters, String msgTypes, String ackPolicies,
+                                             String routeRules, RocketMQTemplate originTemplate,
+                                             Map<String, RocketMQTemplate> templates,
+                                             Function<String, Semaphore> windowFactory) {
+        List<String> problems = new ArrayList<>();
+        
+        // 集群名称 -> 模板，模板bean名称去掉后缀作为集群名称
+        Map<String, ClusterTarget> clusters = new HashMap<>();
+        for (Map.Entry<String, RocketMQTemplate> entry : templates.entrySet()) {
+            String name = entry.getKey();
+            if (name.endsWith(TEMPLATE_BEAN_SUFFIX) && name.length() > TEMPLATE_BEAN_SUFFIX.length()) {
+                name = name.substring(0, name.length() - TEMPLATE_BEAN_SUFFIX.length());
+            }
+            if (entry.getValue() != null) {
+                clusters.put(name, new ClusterTarget(name, entry.getValue(), windowFactory.apply(name)));
+            }
+        }
+        clusters.put(ORIGIN_CLUSTER, new ClusterTarget(ORIGIN_CLUSTER, originTemplate, windowFactory.apply(ORIGIN_CLUSTER)));
+        
+        String[] topicArray = split(topics);
+        String[] clusterArray = split(topicClusters);
+        String[] msgTypeArray = split(msgTypes);
+        String[] ackPolicyArray = split(ackPolicies);
+        
+        // 先按topic收集规则，再与默认集群一起构建不可变的路由
+        Map<String, Map<String, ClusterTarget>> tagRules = new HashMap<>();
+        Map<String, Map<String, ClusterTarget>> typeRules = new HashMap<>();
+        for (String rule : split(routeRules)) {
+            int eq = rule.indexOf('=');
+            if (eq <= 0 || eq == rule.length() - 1) {
+                problems.add("无法解析的路由规则: " + rule);
+                continue;
+            }
+            String selector = rule.substring(0, eq).trim();
+            String clusterName = rule.substring(eq + 1).trim();
+            ClusterTarget target = clusters.get(clusterName);
+            if (target == null) {
+                problems.add("路由规则引用了未知的集群: " + rule);
+                continue;
+            }
+            int tagAt = selector.indexOf(':');
+            int typeAt = selector.indexOf('#');
+            if ((tagAt > 0) == (typeAt > 0)) {
+                problems.add("路由规则需要指定tag或消息类型中的一个: " + rule);
+                continue;
+            }
+            if (tagAt > 0) {
+                tagRules.computeIfAbsent(selector.substring(0, tagAt).trim(), key -> new HashMap<>())
+                        .put(selector.substring(tagAt + 1).trim(), target);
+            } else {
+                typeRules.computeIfAbsent(selector.substring(0, typeAt).trim(), key -> new HashMap<>())
+                        .put(selector.substring(typeAt + 1).trim(), target);
+            }
+        }
+        
+        Map<String, Route> routes = new HashMap<>();
+        for (int i = 0; i < topicArray.length; i++) {
+            String topic = topicArray[i];
+            String clusterName = i < clusterArray.length ? clusterArray[i] : null;
+            ClusterTarget target = clusterName == null ? null : clusters.get(clusterName);
+            if (target == null) {
+                problems.add("topic " + topic + " 的默认集群不存在: " + clusterName);
+            }
+            boolean orderly = i < msgTypeArray.length && ORDERLY_MSG_TYPE.equalsIgnoreCase(msgTypeArray[i]);
+            // 无法识别的确认策略按PRIMARY_ONLY处理并报告，避免拼写错误悄悄降低双写的可靠性要求
+            String rawAckPolicy = i < ackPolicyArray.length ? ackPolicyArray[i] : null;
+            AckPolicy ackPolicy = AckPolicy.parse(rawAckPolicy, null);
+            if (ackPolicy == null) {
+                if (rawAckPolicy != null && !rawAckPolicy.isEmpty()) {
+                    problems.add("topic " + topic + " 的确认策略无法识别: " + rawAckPolicy);
+                }
+                ackPolicy = AckPolicy.PRIMARY_ONLY;
+            }
+            routes.put(topic, new Route(topic, target, ackPolicy, orderly,
+                    tagRules.remove(topic), typeRules.remove(topic)));
+        }
+        for (String topic : tagRules.keySet()) {
+            problems.add("路由规则引用了未配置的topic: " + topic);
+        }
+        for (String topic : typeRules.keySet()) {
+            problems.add("路由规则引用了未配置的topic: " + topic);
+        }
+        return new ProducerRoutingTable(routes, clusters, problems);
+    }
+    
+    private static String[] split(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return new String[0];
+        }
+        return value.trim().split("\\s*;\\s*");
+    }
+    
+    /**
+     * 获取topic的路由，未配置的topic返回null
+     */
+    public Route route(String topic) {
+        return routes.get(topic);
+    }
+    
+    /**
+     * 按集群名称获取发送目标，未知集群返回null
+     */
+    public ClusterTarget cluster(String name) {
+        return name == null ? null : clusters.get(name);
+    }
+    
+    public ClusterTarget getOrigin() {
+        return origin;
+    }
+    
+    /**
+     * 构建时发现的配置问题，为空表示所有路由都有效
+     */
+    public List<String> getProblems() {
+        return problems;
+    }
+    
+    /**
+     * 路由表内容，用于接口展示
+     */
+    public Map<String, Object> describe() {
+        Map<String, Object> routeView = new LinkedHashMap<>();
+        for (Route route : routes.values()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("cluster", route.target == null ? null : route.target.cluster);
+            item.put("ackPolicy", route.ackPolicy.name());
+            item.put("orderly", route.orderly);
+            item.put("tagRules", clusterNames(route.tagRules));
+            item.put("typeRules", clusterNames(route.typeRules));
+            routeView.put(route.topic, item);
+        }
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("routes", routeView);
+        view.put("clusters", new ArrayList<>(clusters.keySet()));
+        view.put("problems", problems);
+        view.put("builtAt", builtAt);
+        return view;
+    }
+    
+    private static Map<String, String> clusterNames(Map<String, ClusterTarget> rules) {
+        Map<String, String> names = new LinkedHashMap<>();
+        for (Map.Entry<String, ClusterTarget> entry : rules.entrySet()) {
+            names.put(entry.getKey(), entry.getValue().cluster);
+        }
+        return names;
+    }
+    
+    /**
+     * 单个topic的路由
+     */
+    public static final class Route {
+        
+        private final String topic;
+        
+        private final ClusterTarget target;
+        
+        private final AckPolicy ackPolicy;
+        
+        private final boolean orderly;
+        
+        private final Map<String, ClusterTarget> tagRules;
+        
+        private final Map<String, ClusterTarget> typeRules;
+        
+        private Route(String topic, ClusterTarget target, AckPolicy ackPolicy, boolean orderly,
+                      Map<String, ClusterTarget> tagRules, Map<String, ClusterTarget> typeRules) {
+            this.topic = topic;
+            this.target = target;
+            this.ackPolicy = ackPolicy;
+            this.orderly = orderly;
+            this.tagRules = tagRules == null ? Collections.emptyMap() : Collections.unmodifiableMap(tagRules);
+            this.typeRules = typeRules == null ? Collections.emptyMap() : Collections.unmodifiableMap(typeRules);
+        }
+        
+        /**
+         * 选择发送目标，tag规则优先于消息类型规则，都未命中时使用topic的默认集群
+         * @param tag 消息标签
+         * @param message 消息内容，MessageDTO按type匹配消息类型规则
+         * @return 发送目标，默认集群不存在时返回null
+         */
+        public ClusterTarget resolve(String tag, Object message) {
+            if (!tagRules.isEmpty() && tag != null) {
+                ClusterTarget target = tagRules.get(tag);
+                if (target != null) {
+                    return target;
+                }
+            }
+            if (!typeRules.isEmpty() && message instanceof MessageDTO) {
+                String type = ((MessageDTO) message).getType();
+                ClusterTarget target = type == null ? null : typeRules.get(type);
+                if (target != null) {
+                    return target;
+                }
+            }
+            return target;
+        }
+        
+        public String getTopic() {
+            return topic;
+        }
+        
+        public AckPolicy getAckPolicy() {
+            return ackPolicy;
+        }
+        
+        public boolean isOrderly() {
+            return orderly;
+        }
+    }
+    
+    /**
+     * 发送目标集群：模板及该集群的异步发送在途窗口
+     */
+    public static final class ClusterTarget {
+        
+        private final String cluster;
+        
+        private final RocketMQTemplate template;
+        
+        private final Semaphore window;
+        
+        private ClusterTarget(String cluster, RocketMQTemplate template, Semaphore window) {
+            this.cluster = cluster;
+            this.template = template;
+            this.window = window;
+        }
+        
+        public String getCluster() {
+            return cluster;
+        }
+        
+        public RocketMQTemplate getTemplate() {
+            return template;
+        }
+        
+        public Semaphore getWindow() {
+            return window;
+        }
+        
+        public boolean isOrigin() {
+            return ORIGIN_CLUSTER.equals(cluster);
+        }
+    }
+}
@@ -1,31 +1,100 @@
 package com.example.rocketmqdemo.producer;
 
+import com.example.rocketmqdemo.codec.CompressorRegistry;
+import com.example.rocketmqdemo.codec.MessageCodecRegistry;
+import com.example.rocketmqdemo.config.HotPathLogSampler;
+import com.example.rocketmqdemo.config.MQProperties;
+import com.example.rocketmqdemo.model.ClusterSendResult;
+import com.example.rocketmqdemo.model.MessageDTO;
+import com.example.rocketmqdemo.model.SendOutcome;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.client.producer.SendCallback;
 import org.apache.rocketmq.client.producer.SendResult;
 import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.client.producer.selector.SelectMessageQueueByHash;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Component
 public class RocketMQProducer {
     
+    // 开关变更和集群切换日志，异步队列满时也不丢弃
+    private static final Logger switchLog = LoggerFactory.getLogger(HotPathLogSampler.SWITCH_LOGGER);
+    
     private static final String PRODUCER_SWITCH_KEY = "demo-mq:producer:switch";
     
+    // 顺序消息按分片键哈希选择队列
+    private static final MessageQueueSelector SHARDING_QUEUE_SELECTOR = new SelectMessageQueueByHash();
+    
+    // 生产者开关变更通知频道
+    private static final String PRODUCER_SWITCH_CHANNEL = "demo-mq:producer:switch:channel";
+    
     @Autowired
     private StringRedisTemplate redisTemplate;
     
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    
     @Autowired
     private RocketMQTemplate originRocketMQTemplate;
     
     @Autowired
     private Map<String, RocketMQTemplate> clusterTemplates;
     
+    @Autowired
+    private MQProperties mqProperties;
+    
+    @Autowired
+    private SendJournal sendJournal;
+    
+    @Autowired
+    private MessageCodecRegistry codecRegistry;
+    
+    @Autowired
+    private CompressorRegistry compressorRegistry;
+    
+    @Autowired
+    private ProducerMetrics producerMetrics;
+    
+    @Autowired
+    private HotPathLogSampler logSampler;
+    
+    // 每个集群的异步发送在途窗口，key为集群名称，重新构建路由表时复用
+    private final ConcurrentHashMap<String, Semaphore> inFlightWindows = new ConcurrentHashMap<>();
+    
+    // 路由表，构建后不可修改，重新加载时整体替换
+    private volatile ProducerRoutingTable routingTable;
+    
+    // 双写开关的本地缓存，发送路径只读该字段，不访问Redis
+    private volatile boolean dualWriteEnabled = false;
+    
+    // 本地缓存最近一次从Redis加载或收到推送的时间
+    private volatile long switchUpdatedAt = 0L;
+    
     /**
      * 初始化生产者开关状态（默认关闭，只写入原集群）
      */
@@ -50,8 +119,24 @@ public class RocketMQProducer {
             log.warn("未找到任何业务集群模板，消息可能无法正确路由到业务集群");
         }
         
+        // 按配置构建路由表，引用不存在的集群的路由不生效
+        MQProperties.Producer producerProperties = mqProperties.getProducer();
+        routingTable = buildRoutingTable(producerProperties.getTopicClusters(), producerProperties.getRouteRules(),
+                producerProperties.getAckPolicies());
+        log.info("生产者路由表: {}", routingTable.describe().get("routes"));
+        for (String problem : routingTable.getProblems()) {
+            log.warn("生产者路由配置问题: {}", problem);
+        }
+        
         // 初始化生产者开关
         initProducerSwitch();
+        
+        // 订阅开关变更通知，收到后直接更新本地缓存
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String value = new String(message.getBody(), StandardCharsets.UTF_8);
+            updateLocalSwitch(Boolean.parseBoolean(value));
+            switchLog.info("收到生产者开关变更通知, 状态: {}", value);
+        }, new ChannelTopic(PRODUCER_SWITCH_CHANNEL));
     }
     
     /**
@@ -63,9 +148,11 @@ public class RocketMQProducer {
             if (keyExists == null || !keyExists) {
                 // 只在键不存在时设置默认值
                 redisTemplate.opsForValue().set(PRODUCER_SWITCH_KEY, "false");
+                updateLocalSwitch(false);
                 log.info("初始化生产者开关状态, 状态: false");
             } else {
                 String value = redisTemplate.opsForValue().get(PRODUCER_SWITCH_KEY);
+                updateLocalSwitch(Boolean.parseBoolean(value));
                 log.info("生产者开关状态已存在, 当前状态: {}", value);
             }
         } catch (Exception e) {
@@ -78,90 +165,500 @@ public class RocketMQProducer {
      * @param topic 主题
      * @param tag 标签
      * @param message 消息内容
-     * @param cluster 业务集群类型
+     * @param cluster 业务集群类型，为空时按路由表选择
      * @return 发送结果，true表示成功，false表示失败
      */
     public boolean sendMessage(String topic, String tag, Object message, String cluster) {
-        boolean success = true;
-        
-        // 构建目标topic
-        String destination = topic;
-        if (tag != null && !tag.isEmpty()) {
-            destination = topic + ":" + tag;
+        return sendMessageWithResult(topic, tag, message, cluster).isSuccess();
+    }
+    
+    /**
+     * 发送消息并返回各集群的发送结果
+     * 开启双写时目标集群和原始集群并行发送，按topic配置的确认策略判定整体结果
+     * @param topic 主题
+     * @param tag 标签
+     * @param message 消息内容
+     * @param cluster 业务集群类型，为空时按路由表选择
+     * @return 各集群的发送结果
+     */
+    public SendOutcome sendMessageWithResult(String topic, String tag, Object message, String cluster) {
+        // 调用方同步等待结果，在途窗口已满时允许短暂等待
+        CompletableFuture<SendOutcome> future = fanOut(topic, tag, message, cluster, true);
+        // 每个集群的发送都受sendMessageTimeout限制，这里多留出一个超时周期作为兜底
+        long waitMs = 2L * mqProperties.getProducer().getSendMessageTimeout();
+        try {
+            return future.get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待消息发送结果时被中断", e);
+        } catch (Exception e) {
+            log.error("等待消息发送结果超时或异常, topic: {}, 集群: {}, 错误: {}", topic, cluster, e.getMessage(), e);
+            return SendOutcome.builder()
+                    .destination(buildDestination(topic, tag))
+                    .primaryCluster(cluster)
+                    .ackPolicy(getAckPolicy(topic).name())
+                    .success(false)
+                    .clusterResults(new LinkedHashMap<>())
+                    .pendingClusters(new ArrayList<>())
+                    .build();
         }
+    }
+    
+    /**
+     * 并行发送到目标集群及（开启双写时）原始集群，按确认策略完成返回的future
+     * 不阻塞调用线程，在途窗口已满时该集群的发送立即失败
+     * @param topic 主题
+     * @param tag 标签
+     * @param message 消息内容
+     * @param requestedCluster 业务集群类型，为空时按路由表选择
+     * @return 各集群的发送结果
+     */
+    public CompletableFuture<SendOutcome> sendMessageFanOut(String topic, String tag, Object message, String requestedCluster) {
+        return fanOut(topic, tag, message, requestedCluster, false);
+    }
+    
+    /**
+     * 并行发送到各集群
+     * @param waitForWindow 在途窗口已满时是否阻塞等待许可，异步调用方不等待，直接返回失败
+     */
+    private CompletableFuture<SendOutcome> fanOut(String topic, String tag, Object message, String requestedCluster,
+                                                  boolean waitForWindow) {
+        String destination = buildDestination(topic, tag);
+        boolean dualWriteEnabled = this.dualWriteEnabled;
+        ProducerRoutingTable table = this.routingTable;
+        ProducerRoutingTable.Route route = table.route(topic);
+        AckPolicy ackPolicy = route != null ? route.getAckPolicy() : AckPolicy.PRIMARY_ONLY;
         
-        // 获取双写开关状态
-        boolean dualWriteEnabled = Boolean.parseBoolean(redisTemplate.opsForValue().get(PRODUCER_SWITCH_KEY));
+        ProducerRoutingTable.ClusterTarget target = resolveTarget(table, route, tag, message, requestedCluster);
+        if (target == null) {
+            String cluster = unroutedCluster(requestedCluster);
+            Map<String, CompletableFuture<ClusterSendResult>> failed = new LinkedHashMap<>();
+            failed.put(cluster, CompletableFuture.completedFuture(unroutedResult(requestedCluster, topic, destination)));
+            return CompletableFuture.completedFuture(buildOutcome(destination, cluster, ackPolicy, false, failed));
+        }
+        String cluster = target.getCluster();
         
-        log.info("发送消息到topic: {}, 双写开关状态: {}, 目标集群: {}", destination, dualWriteEnabled, cluster);
+        if (logSampler.sample(HotPathLogSampler.PRODUCER_SEND)) {
+            log.info("发送消息到topic: {}, 双写开关状态: {}, 目标集群: {}, 确认策略: {}", destination, dualWriteEnabled, cluster, ackPolicy);
+        }
         
-        // 打印当前可用的集群列表，帮助调试
-        log.info("当前可用的业务集群列表: {}", clusterTemplates.keySet());
+        // 消息体只编码一次，所有目标集群共享
+        EncodedMessage encoded;
+        try {
+            encoded = encodeMessage(route, topic, destination, message);
+        } catch (Exception e) {
+            log.error("消息编码失败, topic: {}, 错误: {}", destination, e.getMessage(), e);
+            Map<String, CompletableFuture<ClusterSendResult>> failed = new LinkedHashMap<>();
+            failed.put(cluster, CompletableFuture.completedFuture(
+                    failedResult(cluster, destination, "消息编码失败: " + e.getMessage(), System.currentTimeMillis())));
+            return CompletableFuture.completedFuture(buildOutcome(destination, cluster, ackPolicy, false, failed));
+        }
         
-        // 尝试获取并使用正确的模板
-        RocketMQTemplate targetTemplate = null;
+        // 同时发起所有集群的发送
+        Map<String, CompletableFuture<ClusterSendResult>> legs = new LinkedHashMap<>();
+        legs.put(cluster, sendLeg(target, encoded, waitForWindow, false));
+        if (dualWriteEnabled && !target.isOrigin()) {
+            legs.put(ProducerRoutingTable.ORIGIN_CLUSTER, sendLeg(table.getOrigin(), encoded, waitForWindow, true));
+        }
         
-        // 根据集群名称确定使用哪个模板
-        if ("origin".equals(cluster)) {
-            // 直接使用原始集群模板
-            targetTemplate = originRocketMQTemplate;
-            log.info("使用原始集群模板");
+        CompletableFuture<SendOutcome> outcome = new CompletableFuture<>();
+        if (legs.size() == 1 || ackPolicy == AckPolicy.PRIMARY_ONLY) {
+            legs.get(cluster).thenAccept(primary -> outcome.complete(buildOutcome(destination, cluster, ackPolicy, primary.isSuccess(), legs)));
+        } else if (ackPolicy == AckPolicy.BOTH) {
+            CompletableFuture.allOf(legs.values().toArray(new CompletableFuture[0])).thenRun(() -> {
+                boolean allSuccess = legs.values().stream().allMatch(leg -> leg.join().isSuccess());
+                outcome.complete(buildOutcome(destination, cluster, ackPolicy, allSuccess, legs));
+            });
         } else {
-            // 检查是否有以集群名命名的RocketMQTemplate
-            String templateBeanName = cluster + "RocketMQTemplate";
-            log.info("尝试查找模板: {}, 可用模板: {}", templateBeanName, clusterTemplates.keySet());
-            
-            if (clusterTemplates.containsKey(templateBeanName)) {
-                targetTemplate = clusterTemplates.get(templateBeanName);
-                log.info("使用业务集群模板: {}", templateBeanName);
-            } else if (clusterTemplates.containsKey(cluster)) {
-                targetTemplate = clusterTemplates.get(cluster);
-                log.info("使用业务集群模板: {}", cluster);
+            // FIRST_SUCCESS：任意集群成功即完成，全部失败时判定为失败
+            AtomicInteger remaining = new AtomicInteger(legs.size());
+            for (CompletableFuture<ClusterSendResult> leg : legs.values()) {
+                leg.thenAccept(result -> {
+                    if (result.isSuccess()) {
+                        outcome.complete(buildOutcome(destination, cluster, ackPolicy, true, legs));
+                    } else if (remaining.decrementAndGet() == 0) {
+                        outcome.complete(buildOutcome(destination, cluster, ackPolicy, false, legs));
+                    }
+                });
+            }
+        }
+        
+        // 原始集群双写失败时记录日志，便于发现集群间数据差异
+        CompletableFuture<ClusterSendResult> originLeg = target.isOrigin() ? null : legs.get(ProducerRoutingTable.ORIGIN_CLUSTER);
+        if (originLeg != null) {
+            legs.get(cluster).thenAcceptBoth(originLeg, (primaryResult, originResult) ->
+                    recordDivergence(cluster, topic, primaryResult, originResult));
+            originLeg.thenAccept(originResult -> {
+                if (!originResult.isSuccess()) {
+                    log.error("双写到原始集群失败, topic: {}, 错误: {}", destination, originResult.getErrorMessage());
+                }
+            });
+        }
+        return outcome;
+    }
+    
+    /**
+     * 发送单个集群，在途窗口拒绝等异常情况转换为失败结果
+     */
+    private CompletableFuture<ClusterSendResult> sendLeg(ProducerRoutingTable.ClusterTarget target, EncodedMessage encoded,
+                                                         boolean waitForWindow, boolean journalOnReject) {
+        long startTime = System.currentTimeMillis();
+        return asyncSendToCluster(target, encoded, waitForWindow, journalOnReject)
+                .exceptionally(e -> failedResult(target.getCluster(), encoded.getDestination(), e.getMessage(), startTime));
+    }
+    
+    /**
+     * 选择发送目标：请求指定了集群时只查找该集群，否则按topic路由选择，只做一次查找
+     */
+    private ProducerRoutingTable.ClusterTarget resolveTarget(ProducerRoutingTable table, ProducerRoutingTable.Route route,
+                                                             String tag, Object message, String requestedCluster) {
+        if (requestedCluster != null && !requestedCluster.isEmpty()) {
+            return table.cluster(requestedCluster);
+        }
+        return route == null ? null : route.resolve(tag, message);
+    }
+    
+    /**
+     * 指标中使用的topic标签，未配置的topic统一为{@link ProducerMetrics#UNROUTED_TOPIC}
+     */
+    public String metricTopic(String topic) {
+        return routingTable.route(topic) != null ? topic : ProducerMetrics.UNROUTED_TOPIC;
+    }
+    
+    private String unroutedCluster(String requestedCluster) {
+        return requestedCluster != null && !requestedCluster.isEmpty() ? requestedCluster : "unrouted";
+    }
+    
+    /**
+     * 指定的集群不存在或topic未配置路由时的失败结果
+     */
+    private ClusterSendResult unroutedResult(String requestedCluster, String topic, String destination) {
+        String cluster = unroutedCluster(requestedCluster);
+        String errorMessage = requestedCluster != null && !requestedCluster.isEmpty()
+                ? "未知的集群类型: " + requestedCluster : "topic未配置路由且未指定集群: " + topic;
+        log.error("{}, 可用集群: {}", errorMessage, routingTable.describe().get("clusters"));
+        producerMetrics.recordSend(ProducerMetrics.UNKNOWN_CLUSTER, metricTopic(topic), false, 0L, "UnknownCluster");
+        return failedResult(cluster, destination, errorMessage, System.currentTimeMillis());
+    }
+    
+    private SendOutcome buildOutcome(String destination, String primaryCluster, AckPolicy ackPolicy, boolean success,
+                                     Map<String, CompletableFuture<ClusterSendResult>> legs) {
+        Map<String, ClusterSendResult> clusterResults = new LinkedHashMap<>();
+        List<String> pendingClusters = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<ClusterSendResult>> entry : legs.entrySet()) {
+            ClusterSendResult result = entry.getValue().getNow(null);
+            if (result != null) {
+                clusterResults.put(entry.getKey(), result);
             } else {
-                log.error("未知的集群类型: {}, 可用模板: {}", cluster, clusterTemplates.keySet());
-                success = false;
-                return success;
+                pendingClusters.add(entry.getKey());
             }
         }
+        return SendOutcome.builder()
+                .destination(destination)
+                .primaryCluster(primaryCluster)
+                .ackPolicy(ackPolicy.name())
+                .success(success)
+                .clusterResults(clusterResults)
+                .pendingClusters(pendingClusters)
+                .build();
+    }
+    
+    /**
+     * 获取topic配置的确认策略，未配置时使用PRIMARY_ONLY
+     */
+    public AckPolicy getAckPolicy(String topic) {
+        ProducerRoutingTable.Route route = routingTable.route(topic);
+        return route != null ? route.getAckPolicy() : AckPolicy.PRIMARY_ONLY;
+    }
+    
+    /**
+     * 当前的路由表
+     */
+    public ProducerRoutingTable getRoutingTable() {
+        return routingTable;
+    }
+    
+    /**
+     * 按新的topic默认集群、路由规则和确认策略重新构建路由表并整体替换，未传的参数保持不变
+     * 配置引用了不存在的集群或无法识别的确认策略时拒绝替换，继续使用原路由表
+     * @param topicClusters 每个topic的默认集群
+     * @param routeRules 按tag或消息类型覆盖默认集群的规则
+     * @param ackPolicies 每个topic的双写确认策略
+     * @return 新的路由表
+     */
+    public synchronized ProducerRoutingTable reloadRoutes(String topicClusters, String routeRules, String ackPolicies) {
+        MQProperties.Producer producerProperties = mqProperties.getProducer();
+        String newTopicClusters = topicClusters != null ? topicClusters : producerProperties.getTopicClusters();
+        String newRouteRules = routeRules != null ? routeRules : producerProperties.getRouteRules();
+        String newAckPolicies = ackPolicies != null ? ackPolicies : producerProperties.getAckPolicies();
+        ProducerRoutingTable table = buildRoutingTable(newTopicClusters, newRouteRules, newAckPolicies);
+        if (!table.getProblems().isEmpty()) {
+            throw new IllegalArgumentException(String.join("; ", table.getProblems()));
+        }
+        producerProperties.setTopicClusters(newTopicClusters);
+        producerProperties.setRouteRules(newRouteRules);
+        producerProperties.setAckPolicies(newAckPolicies);
+        routingTable = table;
+        log.info("生产者路由表已重新加载: {}", table.describe().get("routes"));
+        return table;
+    }
+    
+    private ProducerRoutingTable buildRoutingTable(String topicClusters, String routeRules, String ackPolicies) {
+        MQProperties.Producer producerProperties = mqProperties.getProducer();
+        return ProducerRoutingTable.build(producerProperties.getTopics(), topicClusters, producerProperties.getMsgTypes(),
+                ackPolicies, routeRules, originRocketMQTemplate, clusterTemplates,
+                cluster -> inFlightWindows.computeIfAbsent(cluster,
+                        key -> new Semaphore(mqProperties.getProducer().getMaxInFlightPerCluster())));
+    }
+    
+    /**
+     * 异步发送消息，不阻塞调用线程
+     * 每个集群的在途消息数受rocketmq.producer.max-in-flight-per-cluster限制，
+     * 窗口已满时不等待，立即返回失败的future，调用方据此进行限流
+     * @param topic 主题
+     * @param tag 标签
+     * @param message 消息内容
+     * @param requestedCluster 业务集群类型，为空时按路由表选择
+     * @return 目标集群的发送结果
+     */
+    public CompletableFuture<ClusterSendResult> sendMessageAsync(String topic, String tag, Object message, String requestedCluster) {
+        String destination = buildDestination(topic, tag);
+        boolean dualWriteEnabled = this.dualWriteEnabled;
+        ProducerRoutingTable table = this.routingTable;
+        ProducerRoutingTable.Route route = table.route(topic);
         
-        // 检查模板是否为空
-        if (targetTemplate == null) {
-            log.error("集群 {} 的RocketMQTemplate为null", cluster);
-            success = false;
-            return success;
+        ProducerRoutingTable.ClusterTarget target = resolveTarget(table, route, tag, message, requestedCluster);
+        if (target == null) {
+            return CompletableFuture.completedFuture(unroutedResult(requestedCluster, topic, destination));
         }
+        String cluster = target.getCluster();
         
-        // 发送消息到目标集群
+        EncodedMessage encoded;
         try {
-            SendResult clusterResult = targetTemplate.syncSend(destination, MessageBuilder.withPayload(message).build());
-            if (clusterResult.getSendStatus() != SendStatus.SEND_OK) {
-                log.error("消息发送到{}集群失败, topic: {}, status: {}", cluster, destination, clusterResult.getSendStatus());
-                success = false;
-            } else {
-                log.info("消息已发送到{}集群, topic: {}, msgId: {}", cluster, destination, clusterResult.getMsgId());
-            }
+            encoded = encodeMessage(route, topic, destination, message);
         } catch (Exception e) {
-            log.error("消息发送到{}集群异常, topic: {}, 错误: {}", cluster, destination, e.getMessage(), e);
-            success = false;
+            log.error("消息编码失败, topic: {}, 错误: {}", destination, e.getMessage(), e);
+            return CompletableFuture.completedFuture(
+                    failedResult(cluster, destination, "消息编码失败: " + e.getMessage(), System.currentTimeMillis()));
         }
         
-        // 如果开启双写，同时发送到原始集群（除非目标本身就是原始集群）
-        if (dualWriteEnabled && !"origin".equals(cluster)) {
-            try {
-                SendResult originResult = originRocketMQTemplate.syncSend(destination, MessageBuilder.withPayload(message).build());
-                if (originResult.getSendStatus() != SendStatus.SEND_OK) {
-                    log.error("双写到原始集群失败, topic: {}, status: {}", destination, originResult.getSendStatus());
-                    // 双写失败不影响主要的发送结果
+        CompletableFuture<ClusterSendResult> future = asyncSendToCluster(target, encoded, false, false);
+        
+        // 如果开启双写，同时异步发送到原始集群，双写失败不影响主要的发送结果
+        if (dualWriteEnabled && !target.isOrigin()) {
+            CompletableFuture<ClusterSendResult> originFuture = asyncSendToCluster(table.getOrigin(), encoded, false, true)
+                    .exceptionally(e -> failedResult(ProducerRoutingTable.ORIGIN_CLUSTER, destination, e.getMessage(), 0L));
+            originFuture.thenAccept(originResult -> {
+                if (!originResult.isSuccess()) {
+                    log.error("异步双写到原始集群失败, topic: {}, 错误: {}", destination, originResult.getErrorMessage());
+                }
+            });
+            future.exceptionally(e -> failedResult(cluster, destination, e.getMessage(), 0L))
+                    .thenAcceptBoth(originFuture, (primaryResult, originResult) ->
+                            recordDivergence(cluster, topic, primaryResult, originResult));
+        }
+        return future;
+    }
+    
+    /**
+     * 异步发送消息到指定集群
+     * @param waitForWindow 在途窗口已满时是否最多等待in-flight-acquire-timeout-ms，否则立即拒绝
+     * @param journalOnReject 在途窗口拒绝时是否写入发送失败日志，用于双写到原始集群的发送
+     */
+    private CompletableFuture<ClusterSendResult> asyncSendToCluster(ProducerRoutingTable.ClusterTarget target, EncodedMessage encoded,
+                                                                    boolean waitForWindow, boolean journalOnReject) {
+        String cluster = target.getCluster();
+        String destination = encoded.getDestination();
+        CompletableFuture<ClusterSendResult> future = new CompletableFuture<>();
+        long startTime = System.currentTimeMillis();
+        
+        // 获取在途窗口许可，同步调用窗口已满时最多等待配置的时间，异步调用不等待
+        Semaphore window = target.getWindow();
+        try {
+            boolean acquired = waitForWindow
+                    ? window.tryAcquire(mqProperties.getProducer().getInFlightAcquireTimeoutMs(), TimeUnit.MILLISECONDS)
+                    : window.tryAcquire();
+            if (!acquired) {
+                producerMetrics.recordSend(cluster, metricTopic(encoded.getTopic()), false, System.currentTimeMillis() - startTime,
+                        RejectedExecutionException.class.getSimpleName());
+                if (journalOnReject) {
+                    // 双写到原始集群被拒绝时写入日志回放，避免PRIMARY_ONLY下调用方收到成功而原始集群缺少消息
+                    future.complete(journalFailedSend(cluster, encoded, cluster + "集群在途消息已达上限", startTime));
                 } else {
-                    log.info("消息已双写到原始集群, topic: {}, msgId: {}", destination, originResult.getMsgId());
+                    future.completeExceptionally(new RejectedExecutionException(cluster + "集群在途消息已达上限"));
                 }
-            } catch (Exception e) {
-                log.error("双写到原始集群异常, topic: {}, 错误: {}", destination, e.getMessage(), e);
-                // 双写失败不影响主要的发送结果
+                return future;
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return future;
         }
         
-        return success;
+        try {
+            // 直接使用模板内的生产者发送已编码的消息，避免模板再次序列化消息体
+            DefaultMQProducer mqProducer = target.getTemplate().getProducer();
+            SendCallback callback = new SendCallback() {
+                @Override
+                public void onSuccess(SendResult sendResult) {
+                    window.release();
+                    boolean ok = sendResult.getSendStatus() == SendStatus.SEND_OK;
+                    if (!ok) {
+                        log.error("消息异步发送到{}集群失败, topic: {}, status: {}", cluster, destination, sendResult.getSendStatus());
+                    }
+                    long costMs = System.currentTimeMillis() - startTime;
+                    producerMetrics.recordSend(cluster, metricTopic(encoded.getTopic()), ok, costMs, ok ? null : sendResult.getSendStatus().name());
+                    future.complete(ClusterSendResult.builder()
+                            .cluster(cluster)
+                            .destination(destination)
+                            .success(ok)
+                            .msgId(sendResult.getMsgId())
+                            .sendStatus(sendResult.getSendStatus().name())
+                            .costMs(costMs)
+                            .build());
+                }
+                
+                @Override
+                public void onException(Throwable e) {
+                    window.release();
+                    log.error("消息异步发送到{}集群异常, topic: {}, 错误: {}", cluster, destination, e.getMessage(), e);
+                    producerMetrics.recordSend(cluster, metricTopic(encoded.getTopic()), false, System.currentTimeMillis() - startTime,
+                            ProducerMetrics.reasonOf(e));
+                    future.complete(journalFailedSend(cluster, encoded, e.getMessage(), startTime));
+                }
+            };
+            if (encoded.getShardingKey() != null) {
+                // 顺序消息按分片键选择队列，同一分片键的消息进入同一队列
+                mqProducer.send(encoded.toRocketMessage(), SHARDING_QUEUE_SELECTOR, encoded.getShardingKey(),
+                        callback, mqProducer.getSendMsgTimeout());
+            } else {
+                mqProducer.send(encoded.toRocketMessage(), callback, mqProducer.getSendMsgTimeout());
+            }
+        } catch (Exception e) {
+            // 提交阶段抛出的异常不会进入回调，需要在这里释放许可
+            window.release();
+            log.error("消息异步发送到{}集群异常, topic: {}, 错误: {}", cluster, destination, e.getMessage(), e);
+            producerMetrics.recordSend(cluster, metricTopic(encoded.getTopic()), false, System.currentTimeMillis() - startTime,
+                    ProducerMetrics.reasonOf(e));
+            future.complete(journalFailedSend(cluster, encoded, e.getMessage(), startTime));
+        }
+        return future;
+    }
+    
+    /**
+     * 将发送异常的消息写入本地日志，由后台回放任务在集群恢复后重新发送
+     */
+    private ClusterSendResult journalFailedSend(String cluster, EncodedMessage encoded, String errorMessage, long startTime) {
+        ClusterSendResult result = failedResult(cluster, encoded.getDestination(), errorMessage, startTime);
+        if (sendJournal.append(cluster, encoded)) {
+            result.setJournaled(true);
+            log.warn("发送失败的消息已写入本地日志等待回放, 集群: {}, topic: {}, msgId: {}",
+                    cluster, encoded.getDestination(), encoded.getUniqId());
+        }
+        return result;
+    }
+    
+    /**
+     * 同步重新发送本地日志中的消息
+     * @param cluster 目标集群
+     * @param encoded 已编码的消息
+     * @return 发送结果
+     * @throws Exception 发送失败时抛出
+     */
+    public SendResult resend(String cluster, EncodedMessage encoded) throws Exception {
+        DefaultMQProducer mqProducer = requireTarget(cluster).getTemplate().getProducer();
+        if (encoded.getShardingKey() != null) {
+            return mqProducer.send(encoded.toRocketMessage(), SHARDING_QUEUE_SELECTOR, encoded.getShardingKey(),
+                    mqProducer.getSendMsgTimeout());
+        }
+        return mqProducer.send(encoded.toRocketMessage(), mqProducer.getSendMsgTimeout());
+    }
+    
+    /**
+     * 同步发送已构建好的消息，消息体和属性保持原样，用于转发隔离消息到停放topic和重新投递
+     * @param cluster 目标集群
+     * @param message 消息
+     * @return 发送结果
+     * @throws Exception 发送失败时抛出
+     */
+    public SendResult forward(String cluster, Message message) throws Exception {
+        DefaultMQProducer mqProducer = requireTarget(cluster).getTemplate().getProducer();
+        return mqProducer.send(message, mqProducer.getSendMsgTimeout());
+    }
+    
+    /**
+     * 按消息唯一ID查询指定集群上的消息
+     * @param cluster 集群
+     * @param topic 主题
+     * @param msgId 消息唯一ID
+     * @return 消息
+     * @throws Exception 查询失败时抛出
+     */
+    public MessageExt viewMessage(String cluster, String topic, String msgId) throws Exception {
+        return requireTarget(cluster).getTemplate().getProducer().viewMessage(topic, msgId);
+    }
+    
+    /**
+     * 获取集群当前的在途消息数
+     */
+    public int getInFlightCount(String cluster) {
+        Semaphore window = inFlightWindows.get(cluster);
+        return window == null ? 0 : mqProperties.getProducer().getMaxInFlightPerCluster() - window.availablePermits();
+    }
+    
+    /**
+     * 根据集群名称查找发送目标，找不到时抛出异常
+     */
+    private ProducerRoutingTable.ClusterTarget requireTarget(String cluster) {
+        ProducerRoutingTable.ClusterTarget target = routingTable.cluster(cluster);
+        if (target == null) {
+            throw new IllegalArgumentException("未知的集群类型: " + cluster);
+        }
+        return target;
+    }
+    
+    /**
+     * 使用topic配置的编解码器编码消息体，超过阈值时按topic配置的算法压缩
+     * 顺序消息topic以MessageDTO的businessId作为分片键
+     */
+    private EncodedMessage encodeMessage(ProducerRoutingTable.Route route, String topic, String destination, Object message) {
+        EncodedMessage encoded = EncodedMessage.encode(codecRegistry.forTopic(topic, message), destination, message)
+                .compress(compressorRegistry.forTopic(topic), compressorRegistry.getThreshold());
+        if (route != null && route.isOrderly() && message instanceof MessageDTO) {
+            String businessId = ((MessageDTO) message).getBusinessId();
+            if (businessId != null) {
+                encoded = encoded.withShardingKey(businessId);
+            }
+        }
+        return encoded;
+    }
+    
+    private String buildDestination(String topic, String tag) {
+        if (tag != null && !tag.isEmpty()) {
+            return topic + ":" + tag;
+        }
+        return topic;
+    }
+    
+    /**
+     * 双写两个集群的结果不一致时计数
+     */
+    private void recordDivergence(String cluster, String topic, ClusterSendResult primaryResult, ClusterSendResult originResult) {
+        if (primaryResult.isSuccess() && !originResult.isSuccess()) {
+            producerMetrics.recordDivergence(cluster, metricTopic(topic), ProducerMetrics.Divergence.PRIMARY_ONLY);
+        } else if (!primaryResult.isSuccess() && originResult.isSuccess()) {
+            producerMetrics.recordDivergence(cluster, metricTopic(topic), ProducerMetrics.Divergence.ORIGIN_ONLY);
+        }
+    }
+    
+    private ClusterSendResult failedResult(String cluster, String destination, String errorMessage, long startTime) {
+        return ClusterSendResult.builder()
+                .cluster(cluster)
+                .destination(destination)
+                .success(false)
+                .errorMessage(errorMessage)
+                .costMs(System.currentTimeMillis() - startTime)
+                .build();
     }
     
     /**
@@ -170,16 +667,49 @@ public class RocketMQProducer {
      */
     public void setProducerSwitch(boolean enabled) {
         redisTemplate.opsForValue().set(PRODUCER_SWITCH_KEY, String.valueOf(enabled));
-        log.info("设置生产者开关状态, 状态: {}", enabled);
+        updateLocalSwitch(enabled);
+        // 通知其他节点刷新本地缓存
+        redisTemplate.convertAndSend(PRODUCER_SWITCH_CHANNEL, String.valueOf(enabled));
+        switchLog.info("设置生产者开关状态, 状态: {}", enabled);
     }
     
     /**
-     * 获取生产者开关状态
+     * 获取生产者开关状态（读取本地缓存）
      * @return 开关状态
      */
     public boolean getProducerSwitch() {
-        String value = redisTemplate.opsForValue().get(PRODUCER_SWITCH_KEY);
-        // 添加null检查，默认为false（只写原集群）
-        return value != null && Boolean.parseBoolean(value);
+        return dualWriteEnabled;
+    }
+    
+    /**
+     * 定期从Redis刷新本地开关缓存，作为推送丢失或直接修改Redis时的兜底
+     * 刷新间隔读取MQProperties中绑定的rocketmq.producer.switch-refresh-interval-ms
+     */
+    @Scheduled(fixedDelayString = "#{@mqProperties.producer?.switchRefreshIntervalMs ?: 5000}")
+    public void refreshProducerSwitch() {
+        try {
+            String value = redisTemplate.opsForValue().get(PRODUCER_SWITCH_KEY);
+            // 添加null检查，默认为false（只写原集群）
+            boolean enabled = value != null && Boolean.parseBoolean(value);
+            if (enabled != dualWriteEnabled) {
+                switchLog.info("定期刷新发现生产者开关状态变化, 状态: {}", enabled);
+            }
+            updateLocalSwitch(enabled);
+        } catch (Exception e) {
+            // 刷新失败时保留原有缓存值
+            log.warn("刷新生产者开关状态失败, 继续使用本地缓存: {}, 错误: {}", dualWriteEnabled, e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取本地开关缓存最近一次更新时间
+     */
+    public long getSwitchUpdatedAt() {
+        return switchUpdatedAt;
+    }
+    
+    private void updateLocalSwitch(boolean enabled) {
+        this.dualWriteEnabled = enabled;
+        this.switchUpdatedAt = System.currentTimeMillis();
     }
 } 
\ No newline at end of file
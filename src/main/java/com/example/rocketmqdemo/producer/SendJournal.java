@@ -0,0 +1,400 @@
+package com.example.rocketmqdemo.producer;
+
+import com.example.rocketmqdemo.config.MQProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 发送失败消息的本地日志，基于内存映射文件顺序追加
+ * 记录格式：[int 长度][集群][目标topic][属性数量][属性键值...][消息体长度][消息体]，长度为0表示日志末尾
+ * 长度字段在记录内容写完后才写入，进程中途退出时未写完的记录不会被读到
+ * 回放进度保存在单独的检查点文件中，重启后从检查点继续回放
+ * 写满时把未回放的记录移动到文件开头以回收已回放的空间；记录位置使用逻辑偏移，移动后已读取的记录仍可确认
+ */
+@Slf4j
+@Component
+public class SendJournal {
+    
+    private static final String JOURNAL_FILE = "send-journal.dat";
+    
+    private static final String CHECKPOINT_FILE = "send-journal.checkpoint";
+    
+    private static final int LENGTH_SIZE = 4;
+    
+    private static final byte[] ZEROS = new byte[8192];
+    
+    @Autowired
+    private MQProperties mqProperties;
+    
+    private RandomAccessFile journalFile;
+    
+    private RandomAccessFile checkpointFile;
+    
+    private MappedByteBuffer journal;
+    
+    private MappedByteBuffer checkpoint;
+    
+    private int capacity;
+    
+    // 下一个待回放记录的位置
+    private int readPosition;
+    
+    // 下一条记录的写入位置
+    private int writePosition;
+    
+    // 日志中尚未回放的记录数
+    private int pendingRecords;
+    
+    // 文件位置0对应的逻辑偏移，回收空间时增加
+    private long basePosition;
+    
+    private boolean enabled;
+    
+    // 日志已满等原因导致未能记录的消息数
+    private final AtomicLong droppedRecords = new AtomicLong();
+    
+    // 累计写入日志的消息数
+    private final AtomicLong appendedRecords = new AtomicLong();
+    
+    @PostConstruct
+    public void init() {
+        MQProperties.Journal config = mqProperties.getJournal();
+        enabled = config != null && config.isEnabled();
+        if (!enabled) {
+            log.info("发送失败日志未启用");
+            return;
+        }
+        try {
+            File dir = new File(config.getPath());
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("无法创建目录: " + dir.getAbsolutePath());
+            }
+            capacity = config.getFileSizeMb() * 1024 * 1024;
+            journalFile = new RandomAccessFile(new File(dir, JOURNAL_FILE), "rw");
+            journal = journalFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            checkpointFile = new RandomAccessFile(new File(dir, CHECKPOINT_FILE), "rw");
+            checkpoint = checkpointFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+            
+            // 从检查点位置向后扫描，找到日志末尾
+            readPosition = (int) Math.max(0, Math.min(checkpoint.getLong(0), capacity));
+            writePosition = readPosition;
+            while (writePosition + LENGTH_SIZE <= capacity) {
+                int length = journal.getInt(writePosition);
+                if (length <= 0 || writePosition + LENGTH_SIZE + length > capacity) {
+                    break;
+                }
+                writePosition += LENGTH_SIZE + length;
+                pendingRecords++;
+            }
+            // 回收空间过程中退出时末尾可能残留旧记录，清理后再追加
+            clearResidual(writePosition);
+            log.info("发送失败日志已加载, 路径: {}, 容量: {}MB, 待回放记录: {}, 回放位置: {}, 写入位置: {}",
+                    dir.getAbsolutePath(), config.getFileSizeMb(), pendingRecords, readPosition, writePosition);
+        } catch (IOException e) {
+            enabled = false;
+            log.error("初始化发送失败日志失败, 失败消息将不会被记录: {}", e.getMessage(), e);
+        }
+    }
+    
+    @PreDestroy
+    public synchronized void close() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            journal.force();
+            checkpoint.force();
+            journalFile.close();
+            checkpointFile.close();
+        } catch (IOException e) {
+            log.error("关闭发送失败日志时出错: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 追加一条发送失败的消息
+     * @param cluster 发送失败的集群
+     * @param encoded 已编码的消息
+     * @return 是否记录成功
+     */
+    public synchronized boolean append(String cluster, EncodedMessage encoded) {
+        if (!enabled) {
+            return false;
+        }
+        if (!write(cluster, encoded)) {
+            droppedRecords.incrementAndGet();
+            log.error("发送失败日志已满, 消息未能记录, 集群: {}, topic: {}, msgId: {}",
+                    cluster, encoded.getDestination(), encoded.getUniqId());
+            return false;
+        }
+        appendedRecords.incrementAndGet();
+        return true;
+    }
+    
+    /**
+     * 把记录移动到日志末尾，用于暂时无法回放的集群，避免阻塞其他集群的记录
+     * @param record 当前回放位置的记录
+     * @return 是否已移动，日志已满时返回false，记录保持原位
+     */
+    public synchronized boolean requeue(JournalRecord record) {
+        if (!enabled || record.getEndPosition() - basePosition <= readPosition) {
+            return false;
+        }
+        if (!write(record.getCluster(), record.getMessage())) {
+            return false;
+        }
+        commit(record);
+        return true;
+    }
+    
+    /**
+     * 在日志末尾写入一条记录，空间不足时先回收已回放的空间
+     */
+    private boolean write(String cluster, EncodedMessage encoded) {
+        byte[] clusterBytes = cluster.getBytes(StandardCharsets.UTF_8);
+        byte[] destinationBytes = encoded.getDestination().getBytes(StandardCharsets.UTF_8);
+        Map<String, String> properties = encoded.getProperties();
+        byte[] body = encoded.getBody();
+        
+        int length = LENGTH_SIZE + clusterBytes.length + LENGTH_SIZE + destinationBytes.length + LENGTH_SIZE
+                + LENGTH_SIZE + body.length;
+        List<byte[]> propertyBytes = new ArrayList<>(properties.size() * 2);
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] value = entry.getValue().getBytes(StandardCharsets.UTF_8);
+            propertyBytes.add(key);
+            propertyBytes.add(value);
+            length += LENGTH_SIZE + key.length + LENGTH_SIZE + value.length;
+        }
+        
+        if (writePosition + LENGTH_SIZE + length > capacity && (!compact() || writePosition + LENGTH_SIZE + length > capacity)) {
+            return false;
+        }
+        
+        // 先写记录内容，最后写长度
+        int position = writePosition + LENGTH_SIZE;
+        position = putBytes(position, clusterBytes);
+        position = putBytes(position, destinationBytes);
+        journal.putInt(position, properties.size());
+        position += LENGTH_SIZE;
+        for (byte[] bytes : propertyBytes) {
+            position = putBytes(position, bytes);
+        }
+        putBytes(position, body);
+        journal.putInt(writePosition, length);
+        
+        writePosition += LENGTH_SIZE + length;
+        pendingRecords++;
+        return true;
+    }
+    
+    /**
+     * 把未回放的记录移动到文件开头，回收已回放记录占用的空间
+     * 只在新旧区域不重叠时移动：先复制记录并写入结束标记，刷盘后再移动检查点，
+     * 任一步骤中途退出时检查点仍指向完整的记录
+     * @return 是否回收了空间
+     */
+    private boolean compact() {
+        int pendingBytes = writePosition - readPosition;
+        if (readPosition == 0 || readPosition < pendingBytes + LENGTH_SIZE) {
+            return false;
+        }
+        ByteBuffer source = journal.duplicate();
+        source.position(readPosition);
+        source.limit(writePosition);
+        ByteBuffer target = journal.duplicate();
+        target.position(0);
+        target.put(source);
+        journal.putInt(pendingBytes, 0);
+        journal.force();
+        checkpoint.putLong(0, 0);
+        checkpoint.force();
+        
+        zero(pendingBytes, writePosition);
+        basePosition += readPosition;
+        log.info("发送失败日志回收空间, 回收: {}字节, 待回放记录: {}", readPosition, pendingRecords);
+        readPosition = 0;
+        writePosition = pendingBytes;
+        return true;
+    }
+    
+    /**
+     * 从回放位置开始读取最多batchSize条记录，不移动回放位置
+     */
+    public synchronized List<JournalRecord> peek(int batchSize) {
+        List<JournalRecord> records = new ArrayList<>();
+        if (!enabled) {
+            return records;
+        }
+        int position = readPosition;
+        while (records.size() < batchSize && position < writePosition) {
+            int length = journal.getInt(position);
+            int end = position + LENGTH_SIZE + length;
+            int cursor = position + LENGTH_SIZE;
+            
+            byte[] clusterBytes = getBytes(cursor);
+            cursor += LENGTH_SIZE + clusterBytes.length;
+            byte[] destinationBytes = getBytes(cursor);
+            cursor += LENGTH_SIZE + destinationBytes.length;
+            int propertyCount = journal.getInt(cursor);
+            cursor += LENGTH_SIZE;
+            Map<String, String> properties = new HashMap<>();
+            for (int i = 0; i < propertyCount; i++) {
+                byte[] key = getBytes(cursor);
+                cursor += LENGTH_SIZE + key.length;
+                byte[] value = getBytes(cursor);
+                cursor += LENGTH_SIZE + value.length;
+                properties.put(new String(key, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8));
+            }
+            byte[] body = getBytes(cursor);
+            
+            EncodedMessage encoded = EncodedMessage.restore(new String(destinationBytes, StandardCharsets.UTF_8), body, properties);
+            records.add(new JournalRecord(new String(clusterBytes, StandardCharsets.UTF_8), encoded, basePosition + end));
+            position = end;
+        }
+        return records;
+    }
+    
+    /**
+     * 确认记录已回放，把回放位置移动到该记录之后并保存检查点
+     * 日志全部回放完成时从头开始复用文件
+     */
+    public synchronized void commit(JournalRecord record) {
+        long endPosition = record.getEndPosition() - basePosition;
+        if (!enabled || endPosition <= readPosition) {
+            return;
+        }
+        readPosition = (int) endPosition;
+        pendingRecords--;
+        if (readPosition == writePosition) {
+            // 清空已使用的区域，保证重启扫描时不会读到旧记录
+            zero(0, writePosition);
+            basePosition += writePosition;
+            readPosition = 0;
+            writePosition = 0;
+            pendingRecords = 0;
+        }
+        checkpoint.putLong(0, readPosition);
+    }
+    
+    /**
+     * 将日志和检查点刷到磁盘
+     */
+    public synchronized void flush() {
+        if (enabled) {
+            journal.force();
+            checkpoint.force();
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public synchronized int getPendingRecords() {
+        return pendingRecords;
+    }
+    
+    public synchronized int getPendingBytes() {
+        return writePosition - readPosition;
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+    
+    public long getAppendedRecords() {
+        return appendedRecords.get();
+    }
+    
+    private void zero(int from, int to) {
+        ByteBuffer target = journal.duplicate();
+        target.position(from);
+        while (target.position() < to) {
+            target.put(ZEROS, 0, Math.min(ZEROS.length, to - target.position()));
+        }
+    }
+    
+    /**
+     * 清理写入位置之后残留的非零数据
+     */
+    private void clearResidual(int from) {
+        int position = from;
+        while (position + Long.BYTES <= capacity) {
+            if (journal.getLong(position) != 0) {
+                journal.putLong(position, 0);
+            }
+            position += Long.BYTES;
+        }
+        while (position < capacity) {
+            journal.put(position++, (byte) 0);
+        }
+    }
+    
+    private int putBytes(int position, byte[] bytes) {
+        journal.putInt(position, bytes.length);
+        ByteBuffer target = journal.duplicate();
+        target.position(position + LENGTH_SIZE);
+        target.put(bytes);
+        return position + LENGTH_SIZE + bytes.length;
+    }
+    
+    private byte[] getBytes(int position) {
+        byte[] bytes = new byte[journal.getInt(position)];
+        ByteBuffer source = journal.duplicate();
+        source.position(position + LENGTH_SIZE);
+        source.get(bytes);
+        return bytes;
+    }
+    
+    /**
+     * 日志中的一条记录
+     */
+    public static class JournalRecord {
+        
+        private final String cluster;
+        
+        private final EncodedMessage message;
+        
+        // 记录结束位置的逻辑偏移
+        private final long endPosition;
+        
+        JournalRecord(String cluster, EncodedMessage message, long endPosition) {
+            this.cluster = cluster;
+            this.message = message;
+            this.endPosition = endPosition;
+        }
+        
+        public String getCluster() {
+            return cluster;
+        }
+        
+        public EncodedMessage getMessage() {
+            return message;
+        }
+        
+        long getEndPosition() {
+            return endPosition;
+        }
+    }
+}